@@ -75,7 +75,7 @@ public class AVLTreeSet<E extends Comparable> implements Set<E> {
      */
     @Override
     public boolean isEmpty() {
-        return size() == 0;
+        return root == null;
     }
 
     /**
@@ -153,6 +153,15 @@ public class AVLTreeSet<E extends Comparable> implements Set<E> {
         return new AVLTreeSetIterator();
     }
 
+    /**
+     * Returns an iterator that goes over the elements in order (inorder traversal). It keeps the path
+     * to the current node in a stack, so each step costs O(1) amortized.
+     * @return new InorderIterator
+     */
+    public Iterator<E> inorderIterator() {
+        return new InorderIterator();
+    }
+
     /**
      * Inserts each element of the tree set into an Object array and returns it.
      * @return object array with elements of the tree set.
@@ -561,6 +570,33 @@ public class AVLTreeSet<E extends Comparable> implements Set<E> {
 
     // Iterator
 
+    /**
+     * Inorder iterator. Keeps the nodes whose left subtree is being traversed in a stack.
+     */
+    private class InorderIterator implements Iterator<E> {
+        private final ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+
+        public InorderIterator() {
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node<E> node) {
+            for (; node != null; node = node.left)
+                stack.push(node);
+        }
+
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        public E next() {
+            if (stack.isEmpty()) throw new NoSuchElementException();
+            Node<E> node = stack.pop();
+            pushLeft(node.right);
+            return node.data;
+        }
+    }
+
     /**
      * Custom AVlTreeSetIterator. Traverses the tree Post-order and returns the nodes data each time.
      * @param <E> Nodes data type
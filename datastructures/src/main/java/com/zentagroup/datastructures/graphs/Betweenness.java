@@ -0,0 +1,231 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Betweenness centrality with Brandes' algorithm: for every source, a search counts the shortest paths
+ * to every vertex and then the dependency of the source on each vertex is accumulated walking the
+ * vertices back from the farthest. A Graph is searched with BFS and a StructuredGraph with Dijkstra over
+ * the weights of its egress edges, which must be positive, null weights counting as 1. Paths follow the
+ * direction of the edges.
+ * <p>
+ * Sources are searched in parallel. Every thread has its own scratch arrays and centrality accumulator,
+ * which are added together at the end, so threads never write shared memory. Only the vertices reached
+ * from a source are cleared after its search.
+ * <p>
+ * The exact centrality needs one search per vertex. The sampled variants search only k sources chosen at
+ * random and scale the result by n / k, an unbiased estimate whose error shrinks as k grows.
+ */
+public class Betweenness {
+
+    private static final int CHUNK = 16;
+
+    private Betweenness() {
+    }
+
+    /**
+     * Exact betweenness of the vertices of a Graph.
+     *
+     * @param graph graph.
+     * @return centrality of every vertex indexed by vertex number.
+     */
+    public static double[] of(Graph graph) {
+        IntAdjacency adjacency = IntAdjacency.of(graph);
+        return run(adjacency, allSources(adjacency), false, 1);
+    }
+
+    /**
+     * Exact betweenness of the vertices of a StructuredGraph, following the shortest weighted paths.
+     *
+     * @param graph graph.
+     * @return centrality of every vertex indexed by vertex id, 0 for deleted ids.
+     */
+    public static double[] of(StructuredGraph graph) {
+        IntAdjacency adjacency = IntAdjacency.of(graph);
+        return run(adjacency, allSources(adjacency), true, 1);
+    }
+
+    /**
+     * Estimated betweenness of the vertices of a Graph from k random sources.
+     *
+     * @param graph graph.
+     * @param k     number of sources.
+     * @param seed  seed of the random choice.
+     * @return estimated centrality of every vertex indexed by vertex number.
+     */
+    public static double[] sample(Graph graph, int k, long seed) {
+        IntAdjacency adjacency = IntAdjacency.of(graph);
+        int[] sources = sampleSources(adjacency, k, seed);
+        return run(adjacency, sources, false, (double) allSources(adjacency).length / sources.length);
+    }
+
+    /**
+     * Estimated betweenness of the vertices of a StructuredGraph from k random sources.
+     *
+     * @param graph graph.
+     * @param k     number of sources.
+     * @param seed  seed of the random choice.
+     * @return estimated centrality of every vertex indexed by vertex id, 0 for deleted ids.
+     */
+    public static double[] sample(StructuredGraph graph, int k, long seed) {
+        IntAdjacency adjacency = IntAdjacency.of(graph);
+        int[] sources = sampleSources(adjacency, k, seed);
+        return run(adjacency, sources, true, (double) allSources(adjacency).length / sources.length);
+    }
+
+    private static int[] allSources(IntAdjacency adjacency) {
+        return IntStream.range(0, adjacency.size()).filter(adjacency::exists).toArray();
+    }
+
+    /**
+     * Chooses k distinct existing vertices with a partial Fisher-Yates shuffle.
+     */
+    private static int[] sampleSources(IntAdjacency adjacency, int k, long seed) {
+        int[] all = allSources(adjacency);
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive");
+        k = Math.min(k, all.length);
+        Random random = new Random(seed);
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(all.length - i);
+            int t = all[i];
+            all[i] = all[j];
+            all[j] = t;
+        }
+        return Arrays.copyOf(all, k);
+    }
+
+    private static double[] run(IntAdjacency adjacency, int[] sources, boolean weighted, double scale) {
+        int n = adjacency.size();
+        // Every chunk of sources borrows the scratch arrays of a finished chunk, so there are only as many
+        // as chunks run at the same time.
+        Queue<Search> searches = new ConcurrentLinkedQueue<>();
+        IntStream.range(0, (sources.length + CHUNK - 1) / CHUNK).parallel().forEach(c -> {
+            Search search = searches.poll();
+            if (null == search)
+                search = new Search(adjacency, weighted);
+            for (int i = c * CHUNK, end = Math.min(sources.length, i + CHUNK); i < end; i++)
+                search.accumulate(sources[i]);
+            searches.add(search);
+        });
+        double[] centrality = new double[n];
+        for (Search search : searches)
+            for (int v = 0; v < n; v++)
+                centrality[v] += search.centrality[v];
+        if (scale != 1) {
+            for (int v = 0; v < n; v++)
+                centrality[v] *= scale;
+        }
+        return centrality;
+    }
+
+    /**
+     * Scratch arrays of the searches of one thread and the centrality it accumulated.
+     */
+    private static class Search {
+        final IntAdjacency adjacency;
+        final boolean weighted;
+        final double[] centrality;
+        final double[] distance;
+        final double[] paths;
+        final double[] dependency;
+        final int[] order;
+        final IndexedMinHeap heap;
+
+        Search(IntAdjacency adjacency, boolean weighted) {
+            int n = adjacency.size();
+            this.adjacency = adjacency;
+            this.weighted = weighted;
+            this.centrality = new double[n];
+            this.distance = new double[n];
+            this.paths = new double[n];
+            this.dependency = new double[n];
+            this.order = new int[n];
+            this.heap = weighted ? new IndexedMinHeap(n) : null;
+            Arrays.fill(distance, -1);
+        }
+
+        /**
+         * Adds the dependencies of a source. The vertices reached are kept in the order they were settled,
+         * which is by distance, so walking it backwards every vertex comes after the vertices following it
+         * in a shortest path, which are the neighbors w with distance(w) = distance(v) + weight(v, w).
+         */
+        void accumulate(int source) {
+            int reached = weighted ? dijkstra(source) : bfs(source);
+            int[] offsets = adjacency.offsets;
+            int[] targets = adjacency.targets;
+            for (int i = reached - 1; i >= 0; i--) {
+                int v = order[i];
+                double sum = 0;
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    int w = targets[e];
+                    if (distance[w] == distance[v] + (weighted ? adjacency.weights[e] : 1) && w != v)
+                        sum += paths[v] / paths[w] * (1 + dependency[w]);
+                }
+                dependency[v] = sum;
+                if (v != source)
+                    centrality[v] += sum;
+            }
+            for (int i = 0; i < reached; i++) {
+                int v = order[i];
+                distance[v] = -1;
+                paths[v] = 0;
+                dependency[v] = 0;
+            }
+        }
+
+        private int bfs(int source) {
+            int head = 0;
+            int tail = 0;
+            distance[source] = 0;
+            paths[source] = 1;
+            order[tail++] = source;
+            while (head < tail) {
+                int v = order[head++];
+                for (int e = adjacency.offsets[v]; e < adjacency.offsets[v + 1]; e++) {
+                    int w = adjacency.targets[e];
+                    if (distance[w] < 0) {
+                        distance[w] = distance[v] + 1;
+                        order[tail++] = w;
+                    }
+                    if (distance[w] == distance[v] + 1)
+                        paths[w] += paths[v];
+                }
+            }
+            return tail;
+        }
+
+        /**
+         * Dijkstra from the source. A vertex is settled when it leaves the heap, and only then its edges
+         * add its number of paths to the neighbors they reach at their current distance.
+         */
+        private int dijkstra(int source) {
+            int settled = 0;
+            heap.push(source, 0);
+            distance[source] = 0;
+            paths[source] = 1;
+            while (!heap.isEmpty()) {
+                int v = heap.poll();
+                order[settled++] = v;
+                for (int e = adjacency.offsets[v]; e < adjacency.offsets[v + 1]; e++) {
+                    int w = adjacency.targets[e];
+                    double d = distance[v] + adjacency.weights[e];
+                    if (distance[w] < 0 || d < distance[w]) {
+                        if (distance[w] >= 0 && !heap.contains(w))
+                            continue;
+                        distance[w] = d;
+                        paths[w] = paths[v];
+                        heap.push(w, d);
+                    } else if (d == distance[w] && w != v) {
+                        paths[w] += paths[v];
+                    }
+                }
+            }
+            return settled;
+        }
+    }
+}
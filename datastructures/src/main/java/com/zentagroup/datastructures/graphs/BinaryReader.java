@@ -0,0 +1,177 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the values written by BinaryWriter either from a buffer in memory or from a file. Files are
+ * memory mapped through a window that moves forward as the file is read, so files bigger than a
+ * single mapping can be read and several readers can work on different parts of the same file.
+ */
+class BinaryReader {
+
+    private static final int WINDOW = 1 << 26;
+
+    private final FileChannel channel;
+    private final long size;
+    private ByteBuffer buffer;
+    private long base;
+
+    /**
+     * Constructor that creates a reader over the remaining bytes of a buffer.
+     *
+     * @param buffer buffer to read.
+     */
+    BinaryReader(ByteBuffer buffer) {
+        this.channel = null;
+        this.buffer = buffer;
+        this.size = buffer.limit();
+    }
+
+    /**
+     * Constructor that creates a reader over a file starting at a given position.
+     *
+     * @param channel  open file.
+     * @param position offset of the first byte to read.
+     * @throws IOException if the file can't be mapped.
+     */
+    BinaryReader(FileChannel channel, long position) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        map(position, 0);
+    }
+
+    long position() {
+        return base + buffer.position();
+    }
+
+    /**
+     * Moves the reader to a position, mapping a new window if it's out of the current one.
+     *
+     * @param position offset of the next byte to read.
+     */
+    void seek(long position) throws IOException {
+        if (position >= base && position <= base + buffer.limit())
+            buffer.position((int) (position - base));
+        else if (channel != null)
+            map(position, 0);
+        else
+            throw new EOFException();
+    }
+
+    private void map(long position, int required) throws IOException {
+        long length = Math.min(Math.max(WINDOW, required), size - position);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        base = position;
+    }
+
+    /**
+     * Makes sure the next bytes are in the current window.
+     *
+     * @param n number of bytes about to be read.
+     * @throws EOFException if there aren't enough bytes left.
+     */
+    private void require(int n) throws IOException {
+        if (buffer.remaining() >= n)
+            return;
+        if (channel == null || position() + n > size)
+            throw new EOFException();
+        map(position(), n);
+    }
+
+    int readByte() throws IOException {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+
+    byte[] readBytes(int n) throws IOException {
+        require(n);
+        byte[] bytes = new byte[n];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    int readVarInt() throws IOException {
+        return (int) readVarLong();
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new StreamCorruptedException("Malformed variable length integer");
+    }
+
+    String readString() throws IOException {
+        return new String(readBytes(readVarInt()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a value written by BinaryWriter.writeValue.
+     *
+     * @return value read, which may be null.
+     */
+    Object readValue() throws IOException {
+        return readValue(readByte());
+    }
+
+    /**
+     * Reads the rest of a value once its type has been read.
+     *
+     * @param type type of the value.
+     * @return value read, which may be null.
+     */
+    Object readValue(int type) throws IOException {
+        switch (type) {
+            case BinaryWriter.NULL:
+                return null;
+            case BinaryWriter.STRING:
+                return readString();
+            case BinaryWriter.INTEGER: {
+                int i = readVarInt();
+                return (i >>> 1) ^ -(i & 1);
+            }
+            case BinaryWriter.LONG: {
+                long l = readVarLong();
+                return (l >>> 1) ^ -(l & 1);
+            }
+            case BinaryWriter.DOUBLE:
+                return readDouble();
+            case BinaryWriter.FLOAT:
+                return Float.intBitsToFloat(readInt());
+            case BinaryWriter.FALSE:
+                return Boolean.FALSE;
+            case BinaryWriter.TRUE:
+                return Boolean.TRUE;
+            case BinaryWriter.SERIALIZED:
+                try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(readBytes(readVarInt())))) {
+                    return objects.readObject();
+                } catch (ClassNotFoundException ex) {
+                    throw new InvalidClassException(ex.getMessage());
+                }
+            default:
+                throw new StreamCorruptedException("Unknown value type " + type);
+        }
+    }
+}
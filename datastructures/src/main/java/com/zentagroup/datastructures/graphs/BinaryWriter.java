@@ -0,0 +1,133 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the primitive values used by the binary graph files: variable length integers, fixed size
+ * longs and doubles, UTF-8 strings and typed attribute values. It keeps track of the number of bytes
+ * written so sections can be located later through their offsets.
+ */
+class BinaryWriter {
+
+    static final int ABSENT = 0;
+    static final int NULL = 1;
+    static final int STRING = 2;
+    static final int INTEGER = 3;
+    static final int LONG = 4;
+    static final int DOUBLE = 5;
+    static final int FLOAT = 6;
+    static final int FALSE = 7;
+    static final int TRUE = 8;
+    static final int SERIALIZED = 9;
+
+    private final OutputStream out;
+    private long position;
+
+    /**
+     * Constructor that creates a writer over a stream, which should be buffered.
+     *
+     * @param out destination stream.
+     */
+    BinaryWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Number of bytes written so far.
+     *
+     * @return position of the next byte.
+     */
+    long position() {
+        return position;
+    }
+
+    void writeByte(int value) throws IOException {
+        out.write(value);
+        position++;
+    }
+
+    void writeBytes(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    void writeInt(int value) throws IOException {
+        for (int shift = 24; shift >= 0; shift -= 8)
+            writeByte(value >>> shift);
+    }
+
+    void writeLong(long value) throws IOException {
+        for (int shift = 56; shift >= 0; shift -= 8)
+            writeByte((int) (value >>> shift));
+    }
+
+    void writeDouble(double value) throws IOException {
+        writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Writes a non negative integer using 7 bits per byte, so small values take a single byte.
+     *
+     * @param value value to write.
+     */
+    void writeVarInt(int value) throws IOException {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        writeBytes(bytes);
+    }
+
+    /**
+     * Writes a value preceded by its type. Strings, numbers and booleans have their own encoding,
+     * any other serializable object is written with Java serialization.
+     *
+     * @param value value to write, may be null.
+     * @throws NotSerializableException if the value can't be written.
+     */
+    void writeValue(Object value) throws IOException {
+        if (value == null) {
+            writeByte(NULL);
+        } else if (value instanceof String) {
+            writeByte(STRING);
+            writeString((String) value);
+        } else if (value instanceof Integer) {
+            int i = (Integer) value;
+            writeByte(INTEGER);
+            writeVarInt((i << 1) ^ (i >> 31));
+        } else if (value instanceof Long) {
+            long l = (Long) value;
+            writeByte(LONG);
+            writeVarLong((l << 1) ^ (l >> 63));
+        } else if (value instanceof Double) {
+            writeByte(DOUBLE);
+            writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            writeByte(FLOAT);
+            writeInt(Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Serializable) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                objects.writeObject(value);
+            }
+            writeByte(SERIALIZED);
+            writeVarInt(bytes.size());
+            writeBytes(bytes.toByteArray());
+        } else {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+    }
+}
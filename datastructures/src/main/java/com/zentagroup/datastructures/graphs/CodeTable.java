@@ -0,0 +1,59 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * Values indexed by the code of a name of the Dictionary. Codes are small and dense, so an array takes
+ * the place of a hash map: reads are a plain array access, and the array is only copied, under a lock,
+ * when a code beyond its end is added.
+ *
+ * @param <V> type of the values.
+ */
+class CodeTable<V> {
+
+    private volatile AtomicReferenceArray<V> values = new AtomicReferenceArray<>(16);
+
+    /**
+     * Value of a code.
+     *
+     * @param code code of the Dictionary, or Dictionary.NONE.
+     * @return value, or null if the code doesn't have one.
+     */
+    V get(int code) {
+        AtomicReferenceArray<V> table = values;
+        return code < 0 || code >= table.length() ? null : table.get(code);
+    }
+
+    /**
+     * Value of a code, created with the given function if the code doesn't have one. Threads adding the
+     * same code at the same time get the same value.
+     *
+     * @param code   code of the Dictionary.
+     * @param create function that creates the value of the code.
+     * @return value of the code.
+     */
+    V computeIfAbsent(int code, IntFunction<V> create) {
+        if (code < 0)
+            throw new IllegalArgumentException("Invalid code " + code);
+        V value = get(code);
+        if (null != value)
+            return value;
+        synchronized (this) {
+            AtomicReferenceArray<V> table = values;
+            if (code >= table.length()) {
+                AtomicReferenceArray<V> bigger = new AtomicReferenceArray<>(Math.max(code + 1, table.length() * 2));
+                for (int i = 0; i < table.length(); i++)
+                    bigger.set(i, table.get(i));
+                values = bigger;
+                table = bigger;
+            }
+            value = table.get(code);
+            if (null == value) {
+                value = create.apply(code);
+                table.set(code, value);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size bit set that many threads can set at the same time without locks. Each bit is set with a
+ * compare and swap on its word, so exactly one of the threads setting the same bit succeeds, which makes
+ * it suitable to mark vertices as visited by parallel searches.
+ */
+class ConcurrentBitSet {
+
+    private final AtomicLongArray words;
+    private final int size;
+
+    /**
+     * Constructor that creates a bit set with every bit cleared.
+     *
+     * @param size number of bits.
+     */
+    ConcurrentBitSet(int size) {
+        this.size = size;
+        this.words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean get(int i) {
+        return (words.get(i >>> 6) & (1L << i)) != 0;
+    }
+
+    /**
+     * Sets a bit.
+     *
+     * @param i index of the bit.
+     * @return true if the bit was cleared and this call set it, false if it was already set.
+     */
+    boolean set(int i) {
+        int w = i >>> 6;
+        long mask = 1L << i;
+        long word = words.get(w);
+        while ((word & mask) == 0) {
+            if (words.compareAndSet(w, word, word | mask))
+                return true;
+            word = words.get(w);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,234 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Weakly connected components of a Graph or a StructuredGraph, ignoring the direction of the edges.
+ * Components are numbered from 0 in order of their smallest vertex, so both algorithms give the same
+ * numbers for the same graph.
+ * <p>
+ * Vertices of a Graph are identified by their number and vertices of a StructuredGraph by their id.
+ * Ids of deleted vertices belong to no component.
+ */
+public class ConnectedComponents {
+
+    private static final int CHUNK = 4096;
+
+    private final int[] component;
+    private final int[] sizes;
+
+    /**
+     * Constructor that numbers the components from the smallest vertex of each one.
+     *
+     * @param smallest smallest vertex of the component of each vertex, or -1 if the vertex doesn't exist.
+     */
+    private ConnectedComponents(int[] smallest) {
+        int n = smallest.length;
+        component = new int[n];
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            if (smallest[v] == v)
+                component[v] = count++;
+        }
+        sizes = new int[count];
+        for (int v = 0; v < n; v++) {
+            if (smallest[v] < 0) {
+                component[v] = -1;
+            } else {
+                component[v] = component[smallest[v]];
+                sizes[component[v]]++;
+            }
+        }
+    }
+
+    /**
+     * Finds the components of a Graph with a concurrent union find.
+     *
+     * @param graph graph.
+     * @return components.
+     */
+    public static ConnectedComponents unionFind(Graph graph) {
+        return unionFind(IntAdjacency.of(graph));
+    }
+
+    /**
+     * Finds the components of a StructuredGraph with a concurrent union find.
+     *
+     * @param graph graph.
+     * @return components.
+     */
+    public static ConnectedComponents unionFind(StructuredGraph graph) {
+        return unionFind(IntAdjacency.of(graph));
+    }
+
+    /**
+     * Finds the components of a Graph with label propagation.
+     *
+     * @param graph graph.
+     * @return components.
+     */
+    public static ConnectedComponents labelPropagation(Graph graph) {
+        return labelPropagation(IntAdjacency.of(graph));
+    }
+
+    /**
+     * Finds the components of a StructuredGraph with label propagation.
+     *
+     * @param graph graph.
+     * @return components.
+     */
+    public static ConnectedComponents labelPropagation(StructuredGraph graph) {
+        return labelPropagation(IntAdjacency.of(graph));
+    }
+
+    /**
+     * Union find over the edges, split in chunks of vertices processed in parallel. Roots are linked
+     * with a compare and swap that only succeeds while they are still roots, always from the bigger
+     * vertex to the smaller, so no cycle can form and the root ends up being the smallest vertex of the
+     * component. Finds halve the paths they go through, also with compare and swap.
+     */
+    static ConnectedComponents unionFind(IntAdjacency adjacency) {
+        int n = adjacency.size();
+        AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        for (int v = 0; v < n; v++)
+            parent.set(v, v);
+        chunks(n).forEach(c -> {
+            for (int v = c * CHUNK, end = Math.min(n, v + CHUNK); v < end; v++)
+                for (int i = adjacency.offsets[v]; i < adjacency.offsets[v + 1]; i++)
+                    union(parent, v, adjacency.targets[i]);
+        });
+        int[] smallest = new int[n];
+        chunks(n).forEach(c -> {
+            for (int v = c * CHUNK, end = Math.min(n, v + CHUNK); v < end; v++)
+                smallest[v] = adjacency.exists(v) ? find(parent, v) : -1;
+        });
+        return new ConnectedComponents(smallest);
+    }
+
+    private static int find(AtomicIntegerArray parent, int v) {
+        int p = parent.get(v);
+        while (p != v) {
+            int grandparent = parent.get(p);
+            parent.compareAndSet(v, p, grandparent);
+            v = grandparent;
+            p = parent.get(v);
+        }
+        return v;
+    }
+
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b)
+                return;
+            if (a < b) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            if (parent.compareAndSet(a, a, b))
+                return;
+        }
+    }
+
+    /**
+     * Label propagation: every vertex starts with its own number as label and each round lowers the labels
+     * of both ends of every edge to the minimum of the two, then makes every vertex take the label of its
+     * label, which spreads labels along paths much faster than one edge per round. Rounds run in parallel
+     * and stop when one changes nothing, the label of every vertex being then the smallest vertex of its
+     * component. Usually slower than union find, but every round is a sequential scan of the edges.
+     */
+    static ConnectedComponents labelPropagation(IntAdjacency adjacency) {
+        int n = adjacency.size();
+        AtomicIntegerArray label = new AtomicIntegerArray(n);
+        for (int v = 0; v < n; v++)
+            label.set(v, v);
+        boolean changed = true;
+        while (changed) {
+            changed = chunks(n).map(c -> {
+                boolean lowered = false;
+                for (int v = c * CHUNK, end = Math.min(n, v + CHUNK); v < end; v++) {
+                    for (int i = adjacency.offsets[v]; i < adjacency.offsets[v + 1]; i++) {
+                        int w = adjacency.targets[i];
+                        int min = Math.min(label.get(v), label.get(w));
+                        lowered |= lower(label, v, min);
+                        lowered |= lower(label, w, min);
+                    }
+                }
+                return lowered ? 1 : 0;
+            }).sum() > 0;
+            chunks(n).forEach(c -> {
+                for (int v = c * CHUNK, end = Math.min(n, v + CHUNK); v < end; v++)
+                    lower(label, v, label.get(label.get(v)));
+            });
+        }
+        int[] smallest = new int[n];
+        for (int v = 0; v < n; v++)
+            smallest[v] = adjacency.exists(v) ? label.get(v) : -1;
+        return new ConnectedComponents(smallest);
+    }
+
+    private static boolean lower(AtomicIntegerArray label, int v, int to) {
+        int current = label.get(v);
+        while (to < current) {
+            if (label.compareAndSet(v, current, to))
+                return true;
+            current = label.get(v);
+        }
+        return false;
+    }
+
+    private static IntStream chunks(int n) {
+        return IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel();
+    }
+
+    public int getCount() {
+        return sizes.length;
+    }
+
+    /**
+     * Component of a vertex.
+     *
+     * @param v vertex number of a Graph or vertex id of a StructuredGraph.
+     * @return component, or -1 if the vertex doesn't exist.
+     */
+    public int componentOf(int v) {
+        return v < 0 || v >= component.length ? -1 : component[v];
+    }
+
+    public int componentOf(Vertex v) {
+        return componentOf(v.getId());
+    }
+
+    /**
+     * Number of vertices of a component.
+     *
+     * @param c component.
+     * @return size of the component.
+     */
+    public int sizeOf(int c) {
+        return sizes[c];
+    }
+
+    /**
+     * Component of every vertex, indexed by vertex number or id.
+     *
+     * @return copy of the components, -1 for vertices that don't exist.
+     */
+    public int[] getComponents() {
+        return component.clone();
+    }
+
+    /**
+     * Number of vertices of every component, indexed by component.
+     *
+     * @return copy of the sizes.
+     */
+    public int[] getSizes() {
+        return sizes.clone();
+    }
+}
@@ -0,0 +1,625 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Edge;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Contraction hierarchy built from the weighted edges of a StructuredGraph. Vertices are contracted
+ * one by one in order of importance and shortcuts are added between their neighbors whenever the
+ * vertex is part of the only shortest path between them. Queries then run a bidirectional Dijkstra
+ * that only climbs to more important vertices, which settles a few hundred vertices even on very big
+ * graphs, and shortcuts are unpacked back to the original vertices.
+ * <p>
+ * The hierarchy is a snapshot: edges added to or deleted from the graph after building it aren't
+ * reflected, so it must be rebuilt when the graph changes.
+ */
+public class ContractionHierarchy {
+
+    private static final int MAGIC_V1 = 0x43484731;
+    private static final int MAGIC = 0x43484732;
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    private static final int PARALLEL_DEGREE = 16;
+
+    private final Vertex[] vertices;
+    private final int[] indexById;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final double[] edgeWeight;
+    private final int[] childFirst;
+    private final int[] childSecond;
+    private final int[] forwardStart;
+    private final int[] forwardEdges;
+    private final int[] backwardStart;
+    private final int[] backwardEdges;
+    private final ThreadLocal<Query> queries;
+
+    private ContractionHierarchy(Vertex[] vertices, int[] edgeFrom, int[] edgeTo, double[] edgeWeight,
+                                 int[] childFirst, int[] childSecond, int[] forwardStart, int[] forwardEdges,
+                                 int[] backwardStart, int[] backwardEdges) {
+        this.vertices = vertices;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeight = edgeWeight;
+        this.childFirst = childFirst;
+        this.childSecond = childSecond;
+        this.forwardStart = forwardStart;
+        this.forwardEdges = forwardEdges;
+        this.backwardStart = backwardStart;
+        this.backwardEdges = backwardEdges;
+        int bound = 0;
+        for (Vertex v : vertices)
+            bound = Math.max(bound, v.getId() + 1);
+        this.indexById = new int[bound];
+        Arrays.fill(indexById, -1);
+        for (int i = 0; i < vertices.length; i++)
+            indexById[vertices[i].getId()] = i;
+        this.queries = ThreadLocal.withInitial(() -> new Query(vertices.length));
+    }
+
+    /**
+     * Builds the contraction hierarchy of every vertex and egress edge of a graph. When there are
+     * several edges between two vertices only the one with the minor weight is used. The priority of
+     * the vertices and the witness searches of high degree vertices run in parallel.
+     *
+     * @param graph graph to preprocess.
+     * @return contraction hierarchy of the graph.
+     */
+    public static ContractionHierarchy build(StructuredGraph graph) {
+        return new Builder(graph).build();
+    }
+
+    public int getNumVertices() {
+        return vertices.length;
+    }
+
+    /**
+     * Number of edges in the hierarchy, counting the original edges and the shortcuts.
+     *
+     * @return number of edges.
+     */
+    public int getNumEdges() {
+        return edgeFrom.length;
+    }
+
+    /**
+     * Finds the weight of the shortest path between two vertices.
+     *
+     * @param origin      origin Vertex.
+     * @param destination destination Vertex.
+     * @return total weight, positive infinity if the destination can't be reached or null if one of the
+     * vertices isn't part of the hierarchy.
+     */
+    public Double findDistance(Vertex origin, Vertex destination) {
+        int o = indexOf(origin);
+        int d = indexOf(destination);
+        if (o < 0 || d < 0)
+            return null;
+        Query query = queries.get();
+        double distance = query.run(o, d);
+        query.reset();
+        return distance;
+    }
+
+    /**
+     * Finds the shortest path between two vertices unpacking the shortcuts of the hierarchy.
+     *
+     * @param origin      origin Vertex.
+     * @param destination destination Vertex.
+     * @return list of vertices in order from origin to destination, empty if the destination can't be
+     * reached or null if one of the vertices isn't part of the hierarchy.
+     */
+    public List<Vertex> findShortestPath(Vertex origin, Vertex destination) {
+        int o = indexOf(origin);
+        int d = indexOf(destination);
+        if (o < 0 || d < 0)
+            return null;
+        Query query = queries.get();
+        List<Vertex> path = new LinkedList<>();
+        if (query.run(o, d) < Double.POSITIVE_INFINITY) {
+            ArrayDeque<Integer> upward = new ArrayDeque<>();
+            for (int v = query.meeting; v != o; v = edgeFrom[query.forwardParent[v]])
+                upward.push(query.forwardParent[v]);
+            path.add(origin);
+            for (int e : upward)
+                unpack(e, path);
+            for (int v = query.meeting; v != d; v = edgeTo[query.backwardParent[v]])
+                unpack(query.backwardParent[v], path);
+        }
+        query.reset();
+        return path;
+    }
+
+    /**
+     * Returns the index a vertex has in the hierarchy.
+     *
+     * @param v vertex.
+     * @return index of the vertex or -1 if it isn't part of the hierarchy.
+     */
+    private int indexOf(Vertex v) {
+        int id = v.getId();
+        if (id < 0 || id >= indexById.length || indexById[id] < 0 || vertices[indexById[id]] != v)
+            return -1;
+        return indexById[id];
+    }
+
+    /**
+     * Appends to the path the vertices an edge goes through after its origin, replacing every
+     * shortcut by the two edges it was made of.
+     *
+     * @param edge edge to unpack.
+     * @param path path where the vertices are appended.
+     */
+    private void unpack(int edge, List<Vertex> path) {
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(edge);
+        while (!stack.isEmpty()) {
+            int e = stack.pop();
+            if (childFirst[e] < 0) {
+                path.add(vertices[edgeTo[e]]);
+            } else {
+                stack.push(childSecond[e]);
+                stack.push(childFirst[e]);
+            }
+        }
+    }
+
+    /**
+     * Saves the hierarchy to a file. Vertices are stored by their type and data so the hierarchy can
+     * be loaded again over a graph with the same vertices. The type is preceded by a flag that is false
+     * for the vertices without a type.
+     *
+     * @param file destination file.
+     * @throws IOException if the file can't be written or a vertex data isn't serializable.
+     */
+    public void save(Path file) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(vertices.length);
+            for (Vertex v : vertices) {
+                String tag = v.getTag();
+                out.writeBoolean(null != tag);
+                if (null != tag)
+                    out.writeUTF(tag);
+                out.writeObject(new HashMap<>(v.getData()));
+            }
+            out.writeInt(edgeFrom.length);
+            for (int e = 0; e < edgeFrom.length; e++) {
+                out.writeInt(edgeFrom[e]);
+                out.writeInt(edgeTo[e]);
+                out.writeDouble(edgeWeight[e]);
+                out.writeInt(childFirst[e]);
+                out.writeInt(childSecond[e]);
+            }
+            writeArray(out, forwardStart);
+            writeArray(out, forwardEdges);
+            writeArray(out, backwardStart);
+            writeArray(out, backwardEdges);
+        }
+    }
+
+    /**
+     * Loads a hierarchy saved with the save method and binds it to the vertices of a graph with the
+     * same type and data. Files written before untyped vertices were saved, without the type flag, are
+     * read as well.
+     *
+     * @param file  file written by save.
+     * @param graph graph the hierarchy was built from.
+     * @return loaded contraction hierarchy.
+     * @throws IOException if the file can't be read, isn't a hierarchy or a vertex isn't in the graph.
+     */
+    public static ContractionHierarchy load(Path file, StructuredGraph graph) throws IOException {
+        HashMap<Map.Entry<String, Map<String, Object>>, Vertex> byContent = new HashMap<>();
+        for (Vertex v : graph.allVertices())
+            byContent.put(new AbstractMap.SimpleImmutableEntry<>(v.getTag(), v.getData()), v);
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int magic = in.readInt();
+            if (magic != MAGIC && magic != MAGIC_V1)
+                throw new IOException("File " + file + " isn't a contraction hierarchy.");
+            Vertex[] vertices = new Vertex[in.readInt()];
+            for (int i = 0; i < vertices.length; i++) {
+                String tag = magic == MAGIC_V1 || in.readBoolean() ? in.readUTF() : null;
+                @SuppressWarnings("unchecked")
+                Map<String, Object> data = (Map<String, Object>) in.readObject();
+                vertices[i] = byContent.get(new AbstractMap.SimpleImmutableEntry<>(tag, data));
+                if (vertices[i] == null)
+                    throw new IOException("Vertex " + data + " of type " + tag + " isn't in the graph.");
+            }
+            int numEdges = in.readInt();
+            int[] from = new int[numEdges];
+            int[] to = new int[numEdges];
+            double[] weight = new double[numEdges];
+            int[] first = new int[numEdges];
+            int[] second = new int[numEdges];
+            for (int e = 0; e < numEdges; e++) {
+                from[e] = in.readInt();
+                to[e] = in.readInt();
+                weight[e] = in.readDouble();
+                first[e] = in.readInt();
+                second[e] = in.readInt();
+            }
+            return new ContractionHierarchy(vertices, from, to, weight, first, second,
+                    readArray(in), readArray(in), readArray(in), readArray(in));
+        } catch (ClassNotFoundException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static void writeArray(DataOutput out, int[] array) throws IOException {
+        out.writeInt(array.length);
+        for (int value : array)
+            out.writeInt(value);
+    }
+
+    private static int[] readArray(DataInput in) throws IOException {
+        int[] array = new int[in.readInt()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = in.readInt();
+        return array;
+    }
+
+    /**
+     * Reusable state of a query: distances and parent edges of both searches. Only the touched
+     * entries are reset after each query, so a query costs in proportion to the vertices it settles.
+     */
+    private class Query {
+        final double[] forwardDistance;
+        final double[] backwardDistance;
+        final int[] forwardParent;
+        final int[] backwardParent;
+        final IndexedMinHeap forwardHeap;
+        final IndexedMinHeap backwardHeap;
+        final IntList touched = new IntList();
+        int meeting;
+
+        Query(int n) {
+            forwardDistance = new double[n];
+            backwardDistance = new double[n];
+            forwardParent = new int[n];
+            backwardParent = new int[n];
+            Arrays.fill(forwardDistance, Double.POSITIVE_INFINITY);
+            Arrays.fill(backwardDistance, Double.POSITIVE_INFINITY);
+            forwardHeap = new IndexedMinHeap(n);
+            backwardHeap = new IndexedMinHeap(n);
+        }
+
+        /**
+         * Runs the upward bidirectional search. Each side stops once the top of its heap can't
+         * improve the best path found, and the vertex where that path meets is kept in meeting.
+         *
+         * @param origin      origin index.
+         * @param destination destination index.
+         * @return weight of the shortest path or positive infinity.
+         */
+        double run(int origin, int destination) {
+            double best = Double.POSITIVE_INFINITY;
+            meeting = -1;
+            forwardDistance[origin] = 0.0;
+            backwardDistance[destination] = 0.0;
+            touched.add(origin);
+            touched.add(destination);
+            forwardHeap.push(origin, 0.0);
+            backwardHeap.push(destination, 0.0);
+            while (forwardHeap.peekPriority() < best || backwardHeap.peekPriority() < best) {
+                boolean forward = forwardHeap.peekPriority() <= backwardHeap.peekPriority();
+                IndexedMinHeap heap = forward ? forwardHeap : backwardHeap;
+                double[] distance = forward ? forwardDistance : backwardDistance;
+                double[] other = forward ? backwardDistance : forwardDistance;
+                int[] parent = forward ? forwardParent : backwardParent;
+                int[] start = forward ? forwardStart : backwardStart;
+                int[] edges = forward ? forwardEdges : backwardEdges;
+                int v = heap.poll();
+                if (distance[v] + other[v] < best) {
+                    best = distance[v] + other[v];
+                    meeting = v;
+                }
+                for (int i = start[v]; i < start[v + 1]; i++) {
+                    int e = edges[i];
+                    int next = forward ? edgeTo[e] : edgeFrom[e];
+                    double candidate = distance[v] + edgeWeight[e];
+                    if (candidate < distance[next]) {
+                        if (forwardDistance[next] == Double.POSITIVE_INFINITY
+                                && backwardDistance[next] == Double.POSITIVE_INFINITY)
+                            touched.add(next);
+                        distance[next] = candidate;
+                        parent[next] = e;
+                        heap.push(next, candidate);
+                    }
+                }
+            }
+            return best;
+        }
+
+        void reset() {
+            for (int i = 0; i < touched.size; i++) {
+                forwardDistance[touched.values[i]] = Double.POSITIVE_INFINITY;
+                backwardDistance[touched.values[i]] = Double.POSITIVE_INFINITY;
+            }
+            touched.size = 0;
+            forwardHeap.clear();
+            backwardHeap.clear();
+        }
+    }
+
+    /**
+     * Mutable state used while contracting the graph. Edges are kept in parallel arrays and every
+     * vertex has the ids of its egress and ingress edges, shortcuts included.
+     */
+    private static class Builder {
+        final int n;
+        final Vertex[] vertices;
+        final IntList[] out;
+        final IntList[] in;
+        final int[] deletedNeighbors;
+        final IntList[] upward;
+        final IntList[] downward;
+        final ThreadLocal<Witness> witnesses;
+        int[] from = new int[1024];
+        int[] to = new int[1024];
+        double[] weight = new double[1024];
+        int[] first = new int[1024];
+        int[] second = new int[1024];
+        int numEdges;
+
+        Builder(StructuredGraph graph) {
+            List<Vertex> all = graph.allVertices();
+            n = all.size();
+            vertices = all.toArray(new Vertex[n]);
+            int[] index = new int[graph.vertexIdBound()];
+            Arrays.fill(index, -1);
+            for (int i = 0; i < n; i++)
+                index[vertices[i].getId()] = i;
+            out = new IntList[n];
+            in = new IntList[n];
+            upward = new IntList[n];
+            downward = new IntList[n];
+            for (int i = 0; i < n; i++) {
+                out[i] = new IntList();
+                in[i] = new IntList();
+                upward[i] = new IntList();
+                downward[i] = new IntList();
+            }
+            deletedNeighbors = new int[n];
+            witnesses = ThreadLocal.withInitial(() -> new Witness(n));
+            for (int v = 0; v < n; v++) {
+                HashMap<Integer, Integer> lightest = new HashMap<>();
+                for (Edge<?, ?> edge : graph.egressOf(vertices[v])) {
+                    int id = edge.vertex.getId();
+                    int w = id < index.length ? index[id] : -1;
+                    if (w == v || w < 0)
+                        continue;
+                    Integer e = lightest.get(w);
+                    if (e == null)
+                        lightest.put(w, addEdge(v, w, edge.cost(), -1, -1));
+                    else if (edge.cost() < weight[e])
+                        weight[e] = edge.cost();
+                }
+            }
+        }
+
+        ContractionHierarchy build() {
+            IndexedMinHeap queue = new IndexedMinHeap(n);
+            int[] priority = new int[n];
+            IntStream.range(0, n).parallel().forEach(v -> priority[v] = priorityOf(v, shortcutsOf(v)));
+            for (int v = 0; v < n; v++)
+                queue.push(v, priority[v]);
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                List<int[]> shortcuts = shortcutsOf(v);
+                int current = priorityOf(v, shortcuts);
+                if (!queue.isEmpty() && current > queue.peekPriority()) {
+                    queue.push(v, current);
+                    continue;
+                }
+                contract(v, shortcuts);
+            }
+            return finish();
+        }
+
+        /**
+         * Estimates how convenient it is to contract a vertex now: the shortcuts it needs minus the
+         * edges it removes, plus its contracted neighbors so contraction spreads evenly.
+         *
+         * @param v         vertex index.
+         * @param shortcuts shortcuts the vertex needs.
+         * @return priority, the minor the sooner it's contracted.
+         */
+        int priorityOf(int v, List<int[]> shortcuts) {
+            return shortcuts.size() - out[v].size - in[v].size + deletedNeighbors[v];
+        }
+
+        /**
+         * Finds the shortcuts needed to contract a vertex: for each pair of ingress and egress edges of
+         * uncontracted neighbors a witness search checks if there is another path at least as short.
+         * The searches of different ingress neighbors run in parallel on high degree vertices.
+         *
+         * @param v vertex index.
+         * @return pairs with the ingress and egress edge that need a shortcut.
+         */
+        List<int[]> shortcutsOf(int v) {
+            IntStream ingress = IntStream.range(0, in[v].size);
+            if (in[v].size >= PARALLEL_DEGREE)
+                ingress = ingress.parallel();
+            return ingress.mapToObj(i -> shortcutsThrough(in[v].values[i], v))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+        }
+
+        private List<int[]> shortcutsThrough(int inEdge, int v) {
+            List<int[]> shortcuts = new ArrayList<>();
+            int u = from[inEdge];
+            double maxOut = 0.0;
+            for (int i = 0; i < out[v].size; i++) {
+                int e = out[v].values[i];
+                if (to[e] != u)
+                    maxOut = Math.max(maxOut, weight[e]);
+            }
+            Witness witness = witnesses.get();
+            witness.run(u, v, weight[inEdge] + maxOut);
+            for (int i = 0; i < out[v].size; i++) {
+                int e = out[v].values[i];
+                int w = to[e];
+                if (w != u && witness.distance[w] > weight[inEdge] + weight[e])
+                    shortcuts.add(new int[]{inEdge, e});
+            }
+            witness.reset();
+            return shortcuts;
+        }
+
+        /**
+         * Contracts a vertex: adds its shortcuts, keeps its edges to uncontracted neighbors as the
+         * upward edges of the hierarchy and removes them from the neighbors, so egress and ingress
+         * lists only hold edges between uncontracted vertices.
+         *
+         * @param v         vertex index.
+         * @param shortcuts shortcuts the vertex needs.
+         */
+        void contract(int v, List<int[]> shortcuts) {
+            for (int[] pair : shortcuts) {
+                int u = from[pair[0]];
+                int w = to[pair[1]];
+                double total = weight[pair[0]] + weight[pair[1]];
+                int existing = -1;
+                for (int i = 0; i < out[u].size && existing < 0; i++)
+                    if (to[out[u].values[i]] == w) existing = out[u].values[i];
+                if (existing < 0) {
+                    addEdge(u, w, total, pair[0], pair[1]);
+                } else if (total < weight[existing]) {
+                    weight[existing] = total;
+                    first[existing] = pair[0];
+                    second[existing] = pair[1];
+                }
+            }
+            for (int i = 0; i < out[v].size; i++) {
+                int e = out[v].values[i];
+                upward[v].add(e);
+                in[to[e]].remove(e);
+                deletedNeighbors[to[e]]++;
+            }
+            for (int i = 0; i < in[v].size; i++) {
+                int e = in[v].values[i];
+                downward[v].add(e);
+                out[from[e]].remove(e);
+                deletedNeighbors[from[e]]++;
+            }
+        }
+
+        int addEdge(int u, int w, double value, int firstChild, int secondChild) {
+            if (numEdges == from.length) {
+                int length = numEdges * 2;
+                from = Arrays.copyOf(from, length);
+                to = Arrays.copyOf(to, length);
+                weight = Arrays.copyOf(weight, length);
+                first = Arrays.copyOf(first, length);
+                second = Arrays.copyOf(second, length);
+            }
+            from[numEdges] = u;
+            to[numEdges] = w;
+            weight[numEdges] = value;
+            first[numEdges] = firstChild;
+            second[numEdges] = secondChild;
+            out[u].add(numEdges);
+            in[w].add(numEdges);
+            return numEdges++;
+        }
+
+        ContractionHierarchy finish() {
+            int[] forwardStart = new int[n + 1];
+            int[] backwardStart = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                forwardStart[v + 1] = forwardStart[v] + upward[v].size;
+                backwardStart[v + 1] = backwardStart[v] + downward[v].size;
+            }
+            int[] forwardEdges = new int[forwardStart[n]];
+            int[] backwardEdges = new int[backwardStart[n]];
+            for (int v = 0; v < n; v++) {
+                System.arraycopy(upward[v].values, 0, forwardEdges, forwardStart[v], upward[v].size);
+                System.arraycopy(downward[v].values, 0, backwardEdges, backwardStart[v], downward[v].size);
+            }
+            return new ContractionHierarchy(vertices, Arrays.copyOf(from, numEdges), Arrays.copyOf(to, numEdges),
+                    Arrays.copyOf(weight, numEdges), Arrays.copyOf(first, numEdges),
+                    Arrays.copyOf(second, numEdges), forwardStart, forwardEdges, backwardStart, backwardEdges);
+        }
+
+        /**
+         * Dijkstra search over the uncontracted vertices that ignores the vertex being contracted. It
+         * gives up past a maximum weight or a number of settled vertices, in which case a shortcut is
+         * added even if a witness path might exist.
+         */
+        private class Witness {
+            final double[] distance;
+            final IndexedMinHeap heap;
+            final IntList touched = new IntList();
+
+            Witness(int n) {
+                distance = new double[n];
+                Arrays.fill(distance, Double.POSITIVE_INFINITY);
+                heap = new IndexedMinHeap(n);
+            }
+
+            void run(int source, int ignored, double limit) {
+                distance[source] = 0.0;
+                touched.add(source);
+                heap.push(source, 0.0);
+                int settled = 0;
+                while (!heap.isEmpty() && heap.peekPriority() <= limit && settled++ < WITNESS_SETTLE_LIMIT) {
+                    int v = heap.poll();
+                    for (int i = 0; i < out[v].size; i++) {
+                        int e = out[v].values[i];
+                        int w = to[e];
+                        if (w == ignored)
+                            continue;
+                        double candidate = distance[v] + weight[e];
+                        if (candidate < distance[w]) {
+                            if (distance[w] == Double.POSITIVE_INFINITY)
+                                touched.add(w);
+                            distance[w] = candidate;
+                            heap.push(w, candidate);
+                        }
+                    }
+                }
+            }
+
+            void reset() {
+                for (int i = 0; i < touched.size; i++)
+                    distance[touched.values[i]] = Double.POSITIVE_INFINITY;
+                touched.size = 0;
+                heap.clear();
+            }
+        }
+    }
+
+    /**
+     * Growable list of primitive ints.
+     */
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        /**
+         * Removes a value without keeping the order of the list.
+         *
+         * @param value value to remove.
+         */
+        void remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codes of the names used by every StructuredGraph, the types of the vertices and the names of their
+ * properties. Each name is given a small int the first time it's encoded and keeps it while the JVM runs,
+ * so vertices, edge indexes and property tables store and compare ints and the names are only looked up
+ * when they come in or go out through the public methods. Codes are consecutive from 0, so they can index
+ * arrays. Vertices created without a type share the reserved code UNTYPED, which decodes to null.
+ * <p>
+ * Names are never removed; the dictionary is meant for the few types and properties of a schema, not for
+ * arbitrary values.
+ */
+final class Dictionary {
+
+    /**
+     * Code of no name, returned for the names that weren't encoded.
+     */
+    static final int NONE = -1;
+
+    /**
+     * Code of the null name, the type of the vertices created without one.
+     */
+    static final int UNTYPED = 0;
+
+    private static final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int size = UNTYPED + 1;
+
+    private Dictionary() {
+    }
+
+    /**
+     * Code of a name, giving it a new code if it doesn't have one.
+     *
+     * @param name name, or null for UNTYPED.
+     * @return code of the name.
+     */
+    static int encode(String name) {
+        if (null == name)
+            return UNTYPED;
+        Integer code = codes.get(name);
+        if (null != code)
+            return code;
+        synchronized (Dictionary.class) {
+            code = codes.get(name);
+            if (null != code)
+                return code;
+            int next = size++;
+            if (next == names.length)
+                names = Arrays.copyOf(names, next * 2);
+            names[next] = name;
+            codes.put(name, next);
+            return next;
+        }
+    }
+
+    /**
+     * Code of a name without encoding it. A null name is taken as no name, as in the filters where it
+     * stands for every type; the type of untyped vertices is UNTYPED.
+     *
+     * @param name name, can be null.
+     * @return code of the name, or NONE if it's null or it wasn't encoded.
+     */
+    static int code(String name) {
+        if (null == name)
+            return NONE;
+        Integer code = codes.get(name);
+        return null == code ? NONE : code;
+    }
+
+    /**
+     * Code of the type of a vertex without encoding it.
+     *
+     * @param tag type, or null for the untyped vertices.
+     * @return code of the type, UNTYPED if it's null, or NONE if it wasn't encoded.
+     */
+    static int typeCode(String tag) {
+        return null == tag ? UNTYPED : code(tag);
+    }
+
+    /**
+     * Name of a code.
+     *
+     * @param code code given by encode, or NONE.
+     * @return name, or null for NONE and UNTYPED.
+     */
+    static String decode(int code) {
+        return code == NONE ? null : names[code];
+    }
+}
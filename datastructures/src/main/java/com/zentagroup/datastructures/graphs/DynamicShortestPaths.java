@@ -0,0 +1,243 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Edge;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Shortest paths from a source vertex of a StructuredGraph kept up to date as edges are added and deleted,
+ * following the approach of Ramalingam and Reps: a change only updates the part of the shortest path tree
+ * it affects instead of searching the whole graph again. It's opened with
+ * StructuredGraph.trackShortestPaths and must be closed when it's not needed anymore.
+ * <p>
+ * It listens to the changes of the graph and queues them; they are applied on the next query, so writers
+ * aren't slowed down. The queued changes are applied in two phases:
+ * <ul>
+ * <li>Deleted edges of the tree disconnect the subtrees below them. Those vertices are the only ones whose
+ * distance can grow, so they forget it and each gets the best distance through an ingress edge from
+ * outside the subtrees.</li>
+ * <li>Added edges that shorten the distance of their destination queue it too.</li>
+ * </ul>
+ * A single Dijkstra search then starts from the queued vertices and only continues through the vertices
+ * whose distance decreases. An affected vertex can end up closer than before through an edge added in the
+ * same batch, which is why the search isn't limited to the subtrees.
+ * Edges are followed in their direction and weights must not be negative; null weights count as 1.
+ */
+public class DynamicShortestPaths implements StructuredGraphListener, AutoCloseable {
+
+    private final StructuredGraph graph;
+    private final Vertex source;
+    private final Comparable<?> relationship;
+    private final ConcurrentLinkedQueue<Edge<?, ?>> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Edge<?, ?>> deleted = new ConcurrentLinkedQueue<>();
+    private volatile boolean sourceDeleted;
+    private double[] distance = new double[0];
+    private Edge<?, ?>[] parent = new Edge<?, ?>[0];
+    private final IndexedMinHeap heap = new IndexedMinHeap(16);
+
+    /**
+     * Constructor that registers the listener and finds the initial paths with Dijkstra.
+     *
+     * @param graph        graph.
+     * @param source       source vertex.
+     * @param relationship relationship the edges must have, or null for any relationship.
+     */
+    DynamicShortestPaths(StructuredGraph graph, Vertex source, Comparable<?> relationship) {
+        this.graph = graph;
+        this.source = source;
+        this.relationship = relationship;
+        graph.addListener(this);
+        synchronized (this) {
+            grow();
+            distance[source.id] = 0;
+            heap.push(source.id, 0);
+            propagate();
+        }
+    }
+
+    private boolean follows(Edge<?, ?> edge) {
+        return null == relationship || relationship.equals(edge.relationship);
+    }
+
+    /**
+     * Makes room for the ids given since the last query.
+     */
+    private void grow() {
+        int bound = graph.vertexIdBound();
+        int old = distance.length;
+        if (bound <= old)
+            return;
+        distance = Arrays.copyOf(distance, bound);
+        parent = Arrays.copyOf(parent, bound);
+        Arrays.fill(distance, old, bound, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Applies the queued changes.
+     */
+    private void update() {
+        grow();
+        if (sourceDeleted) {
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            Arrays.fill(parent, null);
+            added.clear();
+            deleted.clear();
+            return;
+        }
+        List<Integer> affected = new ArrayList<>();
+        boolean[] inAffected = null;
+        for (Edge<?, ?> edge = deleted.poll(); null != edge; edge = deleted.poll()) {
+            int root = edge.vertex.id;
+            if (parent[root] != edge)
+                continue;
+            if (null == inAffected)
+                inAffected = new boolean[distance.length];
+            collectSubtree(root, affected, inAffected);
+        }
+        if (!affected.isEmpty())
+            reconnect(affected, inAffected);
+        for (Edge<?, ?> edge = added.poll(); null != edge; edge = added.poll()) {
+            if (edge.removed == StructuredGraph.LIVE)
+                relax(edge);
+        }
+        propagate();
+    }
+
+    /**
+     * Adds a vertex and its descendants in the tree to the affected vertices, forgetting their distance.
+     * A descendant is reached through the edge that is its parent, so it's found from the egress edges of
+     * its parent vertex.
+     */
+    private void collectSubtree(int root, List<Integer> affected, boolean[] inAffected) {
+        if (inAffected[root])
+            return;
+        int first = affected.size();
+        inAffected[root] = true;
+        affected.add(root);
+        for (int i = first; i < affected.size(); i++) {
+            int id = affected.get(i);
+            distance[id] = Double.POSITIVE_INFINITY;
+            parent[id] = null;
+            Vertex v = graph.findVertexById(id);
+            if (null == v)
+                continue;
+            graph.forEachEdge(v, true, null, relationship, edge -> {
+                int w = edge.vertex.id;
+                if (w < inAffected.length && parent[w] == edge && !inAffected[w]) {
+                    inAffected[w] = true;
+                    affected.add(w);
+                }
+            });
+        }
+    }
+
+    /**
+     * Gives the affected vertices their best distance through an ingress edge from a vertex outside and
+     * queues the ones reached, so the search of propagate settles the rest from them.
+     */
+    private void reconnect(List<Integer> affected, boolean[] inAffected) {
+        for (int id : affected) {
+            Vertex v = graph.findVertexById(id);
+            if (null == v)
+                continue;
+            graph.forEachEdge(v, false, null, relationship, edge -> {
+                int u = edge.origin.id;
+                if (u < inAffected.length && !inAffected[u] && distance[u] + edge.cost() < distance[id]) {
+                    distance[id] = distance[u] + edge.cost();
+                    parent[id] = edge;
+                }
+            });
+            if (distance[id] < Double.POSITIVE_INFINITY)
+                heap.push(id, distance[id]);
+        }
+    }
+
+    /**
+     * Shortens the distance of the destination of an edge if going through it is shorter, queueing the
+     * destination to pass the change on.
+     */
+    private void relax(Edge<?, ?> edge) {
+        int u = edge.origin.id;
+        int w = edge.vertex.id;
+        if (Math.max(u, w) >= distance.length)
+            grow();
+        double candidate = distance[u] + edge.cost();
+        if (candidate < distance[w]) {
+            distance[w] = candidate;
+            parent[w] = edge;
+            heap.push(w, candidate);
+        }
+    }
+
+    /**
+     * Dijkstra search from the queued vertices, relaxing the egress edges of every vertex settled.
+     */
+    private void propagate() {
+        while (!heap.isEmpty()) {
+            int id = heap.poll();
+            Vertex v = graph.findVertexById(id);
+            if (null != v)
+                graph.forEachEdge(v, true, null, relationship, this::relax);
+        }
+    }
+
+    public Vertex getSource() {
+        return source;
+    }
+
+    /**
+     * Weight of the shortest path from the source to a vertex.
+     *
+     * @param v vertex.
+     * @return distance, or positive infinity if the vertex can't be reached.
+     */
+    public synchronized double distanceTo(Vertex v) {
+        update();
+        return v.id < distance.length ? distance[v.id] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Shortest path from the source to a vertex.
+     *
+     * @param v vertex.
+     * @return list of vertices in order from the source to the vertex, empty if it can't be reached.
+     */
+    public synchronized List<Vertex> pathTo(Vertex v) {
+        update();
+        LinkedList<Vertex> path = new LinkedList<>();
+        if (v.id >= distance.length || distance[v.id] == Double.POSITIVE_INFINITY)
+            return path;
+        path.addFirst(v);
+        for (Edge<?, ?> edge = parent[v.id]; null != edge; edge = parent[edge.origin.id])
+            path.addFirst(edge.origin);
+        return path;
+    }
+
+    @Override
+    public void vertexDeleted(Vertex vertex) {
+        if (vertex == source)
+            sourceDeleted = true;
+    }
+
+    @Override
+    public void edgeAdded(Edge<?, ?> edge) {
+        if (follows(edge))
+            added.add(edge);
+    }
+
+    @Override
+    public void edgeDeleted(Edge<?, ?> edge) {
+        if (follows(edge))
+            deleted.add(edge);
+    }
+
+    /**
+     * Stops listening to the changes of the graph.
+     */
+    @Override
+    public void close() {
+        graph.removeListener(this);
+    }
+}
@@ -0,0 +1,270 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.avltree.AVLTreeSet;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Edge;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Egress or ingress edges of a vertex. Edges are grouped by the type of the vertex at the other end
+ * and then by relationship, each group being an AVLTreeSet ordered by weight and vertex. Besides that
+ * every edge is also listed under the vertex at the other end, so looking for the edges of a given type
+ * and relationship, or the edges to a given vertex, only costs the number of edges found.
+ * <p>
+ * Types are kept by their code in the Dictionary. A vertex is related to vertices of a few types, so the
+ * codes are in a small array searched in a loop, and the names are only decoded by tags().
+ */
+public class EdgeIndex implements Iterable<Edge<?, ?>> {
+
+    private final Vertex owner;
+    private int[] tags = new int[0];
+    private HashMap<Comparable<?>, AVLTreeSet<Edge<?, ?>>>[] byTag = newGroups(0);
+    private HashMap<Vertex, ArrayList<Edge<?, ?>>> byVertex = new HashMap<>();
+    private int size;
+
+    /**
+     * Constructor that creates an empty index for the edges of a vertex.
+     *
+     * @param owner vertex the edges belong to.
+     */
+    EdgeIndex(Vertex owner) {
+        this.owner = owner;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HashMap<Comparable<?>, AVLTreeSet<Edge<?, ?>>>[] newGroups(int length) {
+        return (HashMap<Comparable<?>, AVLTreeSet<Edge<?, ?>>>[]) new HashMap<?, ?>[length];
+    }
+
+    /**
+     * Position of a type in the arrays of types and groups.
+     *
+     * @param tag code of the type.
+     * @return position, or -1 if there are no edges to vertices of the type.
+     */
+    private int indexOf(int tag) {
+        for (int i = 0; i < tags.length; i++)
+            if (tags[i] == tag)
+                return i;
+        return -1;
+    }
+
+    private HashMap<Comparable<?>, AVLTreeSet<Edge<?, ?>>> groupsOf(int tag) {
+        int i = indexOf(tag);
+        return i < 0 ? null : byTag[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds an edge unless there's already one to the same vertex with the same relationship and weight.
+     *
+     * @param edge edge of the owner.
+     * @return true if the edge was added.
+     */
+    boolean add(Edge<?, ?> edge) {
+        Vertex other = edge.opposite(owner);
+        ArrayList<Edge<?, ?>> toOther = byVertex.get(other);
+        if (toOther == null) {
+            toOther = new ArrayList<>(1);
+            byVertex.put(other, toOther);
+        }
+        for (Edge<?, ?> e : toOther)
+            if (e.compareTo(edge) == 0)
+                return false;
+        toOther.add(edge);
+        HashMap<Comparable<?>, AVLTreeSet<Edge<?, ?>>> byRelationship = groupsOf(other.tag);
+        if (byRelationship == null) {
+            byRelationship = new HashMap<>();
+            tags = Arrays.copyOf(tags, tags.length + 1);
+            byTag = Arrays.copyOf(byTag, byTag.length + 1);
+            tags[tags.length - 1] = other.tag;
+            byTag[byTag.length - 1] = byRelationship;
+        }
+        AVLTreeSet<Edge<?, ?>> edges = byRelationship.get(edge.relationship);
+        if (edges == null) {
+            edges = new AVLTreeSet<>();
+            byRelationship.put(edge.relationship, edges);
+        }
+        edges.add(edge);
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes an edge. Groups left empty are removed as well.
+     *
+     * @param edge edge of the owner.
+     * @return true if the edge was in the index.
+     */
+    boolean remove(Edge<?, ?> edge) {
+        Vertex other = edge.opposite(owner);
+        ArrayList<Edge<?, ?>> toOther = byVertex.get(other);
+        if (toOther == null || !toOther.remove(edge))
+            return false;
+        if (toOther.isEmpty())
+            byVertex.remove(other);
+        int i = indexOf(other.tag);
+        HashMap<Comparable<?>, AVLTreeSet<Edge<?, ?>>> byRelationship = byTag[i];
+        AVLTreeSet<Edge<?, ?>> edges = byRelationship.get(edge.relationship);
+        edges.remove(edge);
+        if (edges.isEmpty()) {
+            byRelationship.remove(edge.relationship);
+            if (byRelationship.isEmpty()) {
+                int last = tags.length - 1;
+                tags[i] = tags[last];
+                byTag[i] = byTag[last];
+                tags = Arrays.copyOf(tags, last);
+                byTag = Arrays.copyOf(byTag, last);
+            }
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes every edge at once, dropping the groups instead of removing the edges one by one.
+     */
+    void clear() {
+        tags = new int[0];
+        byTag = newGroups(0);
+        byVertex = new HashMap<>();
+        size = 0;
+    }
+
+    /**
+     * Edges between the owner and a given vertex.
+     *
+     * @param other vertex at the other end.
+     * @return unmodifiable list of edges, empty if there are none.
+     */
+    public List<Edge<?, ?>> edgesTo(Vertex other) {
+        ArrayList<Edge<?, ?>> toOther = byVertex.get(other);
+        return null == toOther ? Collections.<Edge<?, ?>>emptyList() : Collections.unmodifiableList(toOther);
+    }
+
+    /**
+     * Edges with a given relationship to vertices of a given type.
+     *
+     * @param tag          type of the vertices at the other end.
+     * @param relationship relationship of the edges.
+     * @return unmodifiable set of edges ordered by weight, empty if there are none.
+     */
+    public Set<Edge<?, ?>> edges(String tag, Comparable<?> relationship) {
+        HashMap<Comparable<?>, AVLTreeSet<Edge<?, ?>>> byRelationship = groupsOf(Dictionary.typeCode(tag));
+        AVLTreeSet<Edge<?, ?>> edges = null == byRelationship ? null : byRelationship.get(relationship);
+        return null == edges ? Collections.<Edge<?, ?>>emptySet() : Collections.unmodifiableSet(edges);
+    }
+
+    /**
+     * Types of the vertices at the other end of the edges.
+     *
+     * @return unmodifiable set of types.
+     */
+    public Set<String> tags() {
+        Set<String> names = new HashSet<>();
+        for (int tag : tags)
+            names.add(Dictionary.decode(tag));
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Relationships of the edges to vertices of a given type.
+     *
+     * @param tag type of the vertices at the other end.
+     * @return unmodifiable set of relationships, empty if there are none.
+     */
+    public Set<Comparable<?>> relationships(String tag) {
+        HashMap<Comparable<?>, AVLTreeSet<Edge<?, ?>>> byRelationship = groupsOf(Dictionary.typeCode(tag));
+        return null == byRelationship ? Collections.<Comparable<?>>emptySet()
+                : Collections.unmodifiableSet(byRelationship.keySet());
+    }
+
+    /**
+     * Vertices at the other end of the edges, each one once.
+     *
+     * @return unmodifiable set of vertices.
+     */
+    public Set<Vertex> neighbors() {
+        return Collections.unmodifiableSet(byVertex.keySet());
+    }
+
+    /**
+     * Performs an action on the edges to vertices of a type with a relationship. A null tag or
+     * relationship matches any.
+     *
+     * @param tag          type of the vertices at the other end, or null for every type.
+     * @param relationship relationship of the edges, or null for every relationship.
+     * @param action       action performed on each edge.
+     */
+    public void forEach(String tag, Comparable<?> relationship, Consumer<? super Edge<?, ?>> action) {
+        int code = Dictionary.code(tag);
+        if (null == tag || code != Dictionary.NONE)
+            forEach(code, relationship, action);
+    }
+
+    /**
+     * Performs an action on the edges to vertices of a type with a relationship, the type given by its
+     * code.
+     *
+     * @param tag          code of the type of the vertices at the other end, or Dictionary.NONE for every type.
+     * @param relationship relationship of the edges, or null for every relationship.
+     * @param action       action performed on each edge.
+     */
+    void forEach(int tag, Comparable<?> relationship, Consumer<? super Edge<?, ?>> action) {
+        for (int i = 0; i < tags.length; i++) {
+            if (tag != Dictionary.NONE && tag != tags[i])
+                continue;
+            if (null != relationship) {
+                AVLTreeSet<Edge<?, ?>> edges = byTag[i].get(relationship);
+                if (null != edges)
+                    edges.forEachInorder(e -> action.accept((Edge<?, ?>) e));
+            } else {
+                for (AVLTreeSet<Edge<?, ?>> edges : byTag[i].values())
+                    edges.forEachInorder(e -> action.accept((Edge<?, ?>) e));
+            }
+        }
+    }
+
+    /**
+     * Iterates lazily over every edge, group after group.
+     *
+     * @return iterator of edges.
+     */
+    @Override
+    public Iterator<Edge<?, ?>> iterator() {
+        Iterator<HashMap<Comparable<?>, AVLTreeSet<Edge<?, ?>>>> tags = Arrays.asList(byTag).iterator();
+        return new Iterator<Edge<?, ?>>() {
+            Iterator<AVLTreeSet<Edge<?, ?>>> groups = Collections.emptyIterator();
+            Iterator<Edge<?, ?>> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (groups.hasNext())
+                        current = groups.next().inorderIterator();
+                    else if (tags.hasNext())
+                        groups = tags.next().values().iterator();
+                    else
+                        return false;
+                }
+                return true;
+            }
+
+            @Override
+            public Edge<?, ?> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+}
@@ -1,25 +1,55 @@
 package com.zentagroup.datastructures.graphs;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
 
 public class Graph {
 
+    private static final int[] NO_EDGES = new int[0];
+
     private int V;   // No. of vertices
-    private LinkedList<Integer> adj[]; //Adjacency Lists
+    private int adj[][]; //Adjacency Lists, as int arrays that grow when full
+    private int degree[]; //No. of vertices used in each adjacency list
 
     // Constructor
     public Graph(int v) {
         V = v;
-        adj = new LinkedList[v];
-        for (int i = 0; i < v; ++i) {
-            adj[i] = new LinkedList();
-        }
+        adj = new int[v][];
+        degree = new int[v];
+        Arrays.fill(adj, NO_EDGES);
+    }
+
+    public int getNumVertices() {
+        return V;
+    }
+
+    // Number of edges leaving a vertex
+    public int degree(int v) {
+        return degree[v];
+    }
+
+    // Copy of the vertices adjacent to a vertex, in the order their edges were added
+    public int[] adjacent(int v) {
+        return Arrays.copyOf(adj[v], degree[v]);
+    }
+
+    // Copies the adjacency list of a vertex into an array starting at a position
+    void copyAdjacent(int v, int[] destination, int position) {
+        System.arraycopy(adj[v], 0, destination, position, degree[v]);
     }
 
     // Function to add an edge into the graph
     public void addEdge(int v, int w) {
-        adj[v].add(w);
+        if (w < 0 || w >= V)
+            throw new IndexOutOfBoundsException("Vertex " + w);
+        if (degree[v] == adj[v].length)
+            adj[v] = Arrays.copyOf(adj[v], Math.max(4, degree[v] * 2));
+        adj[v][degree[v]++] = w;
     }
 
     // prints BFS traversal from a given source s
@@ -43,9 +73,8 @@ public class Graph {
             // Get all adjacent vertices of the dequeued vertex s
             // If a adjacent has not been visited, then mark it
             // visited and enqueue it
-            Iterator<Integer> i = adj[s].listIterator();
-            while (i.hasNext()) {
-                int n = i.next();
+            for (int i = 0; i < degree[s]; ++i) {
+                int n = adj[s][i];
                 if (!visited[n]) {
                     visited[n] = true;
                     queue.add(n);
@@ -61,9 +90,8 @@ public class Graph {
         System.out.print(v + " ");
 
         // Recur for all the vertices adjacent to this vertex
-        Iterator<Integer> i = adj[v].listIterator();
-        while (i.hasNext()) {
-            int n = i.next();
+        for (int i = 0; i < degree[v]; ++i) {
+            int n = adj[v][i];
             if (!visited[n])
                 DFSUtil(n, visited);
         }
@@ -79,4 +107,98 @@ public class Graph {
         DFSUtil(v, visited);
     }
 
+    // Kahn's algorithm: returns the vertices so that every edge goes from an earlier
+    // vertex to a later one, or null if the graph has a cycle. It keeps the in-degree
+    // of every vertex in an int array and a queue of the vertices whose in-degree
+    // dropped to 0, so it doesn't recur and works on graphs of any depth
+    public int[] topologicalOrder() {
+        IntAdjacency adjacency = IntAdjacency.of(this);
+        int[] inDegree = inDegrees(adjacency);
+        int[] order = new int[V];
+        int head = 0, tail = 0;
+        for (int v = 0; v < V; ++v)
+            if (inDegree[v] == 0)
+                order[tail++] = v;
+        while (head < tail) {
+            int v = order[head++];
+            for (int i = adjacency.offsets[v]; i < adjacency.offsets[v + 1]; ++i)
+                if (--inDegree[adjacency.targets[i]] == 0)
+                    order[tail++] = adjacency.targets[i];
+        }
+        return tail == V ? order : null;
+    }
+
+    // Kahn's algorithm one layer at a time: the first layer has the vertices without
+    // incoming edges and each following layer the vertices whose incoming edges all
+    // come from previous layers, so the vertices of a layer are independent of each
+    // other and can be processed in parallel. Each layer is expanded in parallel,
+    // decrementing the in-degrees atomically. Returns null if the graph has a cycle
+    public List<int[]> topologicalLayers() {
+        IntAdjacency adjacency = IntAdjacency.of(this);
+        AtomicIntegerArray inDegree = new AtomicIntegerArray(inDegrees(adjacency));
+        List<int[]> layers = new ArrayList<>();
+        int[] layer = IntStream.range(0, V).filter(v -> inDegree.get(v) == 0).toArray();
+        int count = 0;
+        while (layer.length > 0) {
+            layers.add(layer);
+            count += layer.length;
+            layer = Arrays.stream(layer).parallel()
+                    .flatMap(v -> IntStream.range(adjacency.offsets[v], adjacency.offsets[v + 1])
+                            .map(i -> adjacency.targets[i])
+                            .filter(w -> inDegree.decrementAndGet(w) == 0))
+                    .toArray();
+        }
+        return count == V ? layers : null;
+    }
+
+    private int[] inDegrees(IntAdjacency adjacency) {
+        int[] inDegree = new int[V];
+        for (int target : adjacency.targets)
+            inDegree[target]++;
+        return inDegree;
+    }
+
+    // Returns the vertices of a cycle in the order of its edges (the last one has an
+    // edge to the first one), or an empty list if the graph has none. It's a DFS with
+    // an explicit stack of vertices and edge positions instead of recursion: a vertex is
+    // grey while it's in the stack, and an edge to a grey vertex closes a cycle
+    public List<Integer> findCycle() {
+        IntAdjacency adjacency = IntAdjacency.of(this);
+        byte[] color = new byte[V]; // 0 white, 1 grey (in the stack), 2 black (done)
+        int[] stack = new int[V];
+        int[] next = new int[V];
+        for (int s = 0; s < V; ++s) {
+            if (color[s] != 0)
+                continue;
+            int top = 0;
+            stack[0] = s;
+            next[s] = adjacency.offsets[s];
+            color[s] = 1;
+            while (top >= 0) {
+                int v = stack[top];
+                if (next[v] == adjacency.offsets[v + 1]) {
+                    color[v] = 2;
+                    top--;
+                    continue;
+                }
+                int w = adjacency.targets[next[v]++];
+                if (color[w] == 1) {
+                    List<Integer> cycle = new ArrayList<>();
+                    int i = top;
+                    while (stack[i] != w)
+                        i--;
+                    for (; i <= top; ++i)
+                        cycle.add(stack[i]);
+                    return cycle;
+                }
+                if (color[w] == 0) {
+                    color[w] = 1;
+                    next[w] = adjacency.offsets[w];
+                    stack[++top] = w;
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+
 }
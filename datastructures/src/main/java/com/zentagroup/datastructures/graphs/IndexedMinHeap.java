@@ -0,0 +1,163 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary min heap of integer keys ordered by a double priority. Every key keeps track of its
+ * position inside the heap, so the priority of a key already in the heap can be decreased in
+ * O(log n) instead of inserting a duplicate entry. Keys are expected to be small non negative
+ * integers (vertex indexes), the internal arrays grow as bigger keys are pushed.
+ */
+class IndexedMinHeap {
+
+    private int[] heap;
+    private int[] position;
+    private double[] priority;
+    private int size;
+
+    /**
+     * Constructor that creates an empty heap able to hold keys below the given capacity
+     * without growing.
+     *
+     * @param capacity expected number of keys.
+     */
+    IndexedMinHeap(int capacity) {
+        capacity = Math.max(capacity, 16);
+        heap = new int[capacity];
+        position = new int[capacity];
+        priority = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks whether a key is currently in the heap.
+     *
+     * @param key key to look for.
+     * @return true if the key is waiting in the heap.
+     */
+    boolean contains(int key) {
+        return key < position.length && position[key] >= 0;
+    }
+
+    /**
+     * Inserts a key with the given priority. If the key is already in the heap its priority is
+     * replaced only when the new one is minor.
+     *
+     * @param key      key to insert.
+     * @param newValue priority of the key.
+     * @return true if the key was inserted or its priority decreased.
+     */
+    boolean push(int key, double newValue) {
+        ensureKey(key);
+        int i = position[key];
+        if (i < 0) {
+            ensureHeap();
+            heap[size] = key;
+            position[key] = size;
+            priority[key] = newValue;
+            siftUp(size++);
+            return true;
+        }
+        if (newValue < priority[key]) {
+            priority[key] = newValue;
+            siftUp(i);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the priority of the key on top of the heap without removing it.
+     *
+     * @return minor priority in the heap or positive infinity if the heap is empty.
+     */
+    double peekPriority() {
+        return size == 0 ? Double.POSITIVE_INFINITY : priority[heap[0]];
+    }
+
+    /**
+     * Removes the key with the minor priority and returns it.
+     *
+     * @return key with the minor priority.
+     */
+    int poll() {
+        if (size == 0)
+            throw new NoSuchElementException("Heap is empty");
+        int top = heap[0];
+        position[top] = -1;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Removes every key from the heap keeping the allocated arrays.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++)
+            position[heap[i]] = -1;
+        size = 0;
+    }
+
+    private void siftUp(int i) {
+        int key = heap[i];
+        double value = priority[key];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int parentKey = heap[parent];
+            if (priority[parentKey] <= value)
+                break;
+            heap[i] = parentKey;
+            position[parentKey] = i;
+            i = parent;
+        }
+        heap[i] = key;
+        position[key] = i;
+    }
+
+    private void siftDown(int i) {
+        int key = heap[i];
+        double value = priority[key];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && priority[heap[right]] < priority[heap[child]])
+                child = right;
+            if (value <= priority[heap[child]])
+                break;
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = key;
+        position[key] = i;
+    }
+
+    private void ensureKey(int key) {
+        if (key >= position.length) {
+            int length = Math.max(key + 1, position.length * 2);
+            int old = position.length;
+            position = Arrays.copyOf(position, length);
+            Arrays.fill(position, old, length, -1);
+            priority = Arrays.copyOf(priority, length);
+        }
+    }
+
+    private void ensureHeap() {
+        if (size == heap.length)
+            heap = Arrays.copyOf(heap, heap.length * 2);
+    }
+}
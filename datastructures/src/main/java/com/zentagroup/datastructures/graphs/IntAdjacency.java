@@ -0,0 +1,148 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Edge;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.Arrays;
+
+/**
+ * Compressed sparse row copy of the edges of a graph: the targets of vertex v are
+ * {@code targets[offsets[v]]} to {@code targets[offsets[v + 1] - 1]}. Whole graph algorithms run on it
+ * instead of on the adjacency lists or edge indexes, so they read two flat int arrays and can split the
+ * vertices among threads without locks.
+ * <p>
+ * Vertices of a Graph keep their number. Vertices of a StructuredGraph are numbered by id, so ids of
+ * deleted vertices are left as vertices without edges that don't exist, and the weight of each edge is
+ * kept next to its target, a null weight counting as 1.
+ */
+class IntAdjacency {
+
+    final int[] offsets;
+    final int[] targets;
+    final double[] weights;
+    final Vertex[] vertices;
+
+    private IntAdjacency(int[] offsets, int[] targets, double[] weights, Vertex[] vertices) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.vertices = vertices;
+    }
+
+    /**
+     * Copies the edges of a Graph.
+     *
+     * @param graph graph.
+     * @return adjacency with the same vertex numbers.
+     */
+    static IntAdjacency of(Graph graph) {
+        int n = graph.getNumVertices();
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++)
+            offsets[v + 1] = offsets[v] + graph.degree(v);
+        int[] targets = new int[offsets[n]];
+        for (int v = 0; v < n; v++)
+            graph.copyAdjacent(v, targets, offsets[v]);
+        return new IntAdjacency(offsets, targets, null, null);
+    }
+
+    /**
+     * Adjacency over already built arrays, without weights.
+     *
+     * @param offsets start of the targets of every vertex, and the number of targets at the end.
+     * @param targets targets of every vertex.
+     * @return adjacency.
+     */
+    static IntAdjacency of(int[] offsets, int[] targets) {
+        return new IntAdjacency(offsets, targets, null, null);
+    }
+
+    /**
+     * Copies the egress edges of a StructuredGraph. In concurrent mode edges added meanwhile may be left
+     * out; edges to vertices added meanwhile always are.
+     *
+     * @param graph graph.
+     * @return adjacency numbered by vertex id.
+     */
+    static IntAdjacency of(StructuredGraph graph) {
+        int n = graph.vertexIdBound();
+        Vertex[] vertices = new Vertex[n];
+        int[][] rows = new int[n][];
+        double[][] rowWeights = new double[n][];
+        int[] offsets = new int[n + 1];
+        int[] row = new int[16];
+        double[] rowWeight = new double[16];
+        for (int v = 0; v < n; v++) {
+            vertices[v] = graph.findVertexById(v);
+            int degree = 0;
+            if (null != vertices[v]) {
+                for (Edge<?, ?> edge : graph.egressOf(vertices[v])) {
+                    int w = edge.vertex.id;
+                    if (w < 0 || w >= n)
+                        continue;
+                    if (degree == row.length) {
+                        row = Arrays.copyOf(row, degree * 2);
+                        rowWeight = Arrays.copyOf(rowWeight, degree * 2);
+                    }
+                    rowWeight[degree] = edge.cost();
+                    row[degree++] = w;
+                }
+            }
+            rows[v] = Arrays.copyOf(row, degree);
+            rowWeights[v] = Arrays.copyOf(rowWeight, degree);
+            offsets[v + 1] = offsets[v] + degree;
+        }
+        int[] targets = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        for (int v = 0; v < n; v++) {
+            System.arraycopy(rows[v], 0, targets, offsets[v], rows[v].length);
+            System.arraycopy(rowWeights[v], 0, weights, offsets[v], rowWeights[v].length);
+            rows[v] = null;
+            rowWeights[v] = null;
+        }
+        return new IntAdjacency(offsets, targets, weights, vertices);
+    }
+
+    int size() {
+        return offsets.length - 1;
+    }
+
+    int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    boolean exists(int v) {
+        return null == vertices || null != vertices[v];
+    }
+
+    double weight(int i) {
+        return null == weights ? 1 : weights[i];
+    }
+
+    /**
+     * Adjacency with every edge reversed, so the targets of a vertex are the vertices with an edge to it,
+     * in increasing order.
+     *
+     * @return reversed adjacency with the same weights.
+     */
+    IntAdjacency reverse() {
+        int n = size();
+        int[] reversedOffsets = new int[n + 1];
+        for (int target : targets)
+            reversedOffsets[target + 1]++;
+        for (int v = 0; v < n; v++)
+            reversedOffsets[v + 1] += reversedOffsets[v];
+        int[] next = Arrays.copyOf(reversedOffsets, n);
+        int[] reversedTargets = new int[targets.length];
+        double[] reversedWeights = null == weights ? null : new double[weights.length];
+        for (int v = 0; v < n; v++) {
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int j = next[targets[i]]++;
+                reversedTargets[j] = v;
+                if (null != weights)
+                    reversedWeights[j] = weights[i];
+            }
+        }
+        return new IntAdjacency(reversedOffsets, reversedTargets, reversedWeights, vertices);
+    }
+}
@@ -0,0 +1,180 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.stream.IntStream;
+
+/**
+ * PageRank of the vertices of a Graph, or of a StructuredGraph with each edge counting in proportion to
+ * its weight among the egress edges of its origin.
+ * <p>
+ * Ranks are computed by power iteration over primitive arrays: every iteration each vertex pulls the rank
+ * of the vertices with an edge to it from a reversed copy of the edges, so vertices are split among
+ * threads in chunks and every one writes only its own rank. The rank of vertices without egress edges is
+ * spread like the teleport. Iterations stop when the total change of the ranks is below the tolerance.
+ * <p>
+ * In the personalized mode the teleport only goes to a set of source vertices, so ranks measure how close
+ * every vertex is to them.
+ */
+public class PageRank {
+
+    private static final int CHUNK = 4096;
+
+    private final double damping;
+    private final double tolerance;
+    private final int maxIterations;
+    private int iterations;
+
+    /**
+     * Constructor with damping 0.85, tolerance 1e-6 and at most 100 iterations.
+     */
+    public PageRank() {
+        this(0.85, 1e-6, 100);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param damping       probability of following an edge instead of teleporting, between 0 and 1.
+     * @param tolerance     total change of the ranks, summed over every vertex, under which it stops.
+     * @param maxIterations maximum number of iterations.
+     */
+    public PageRank(double damping, double tolerance, int maxIterations) {
+        if (damping < 0 || damping > 1)
+            throw new IllegalArgumentException("Damping must be between 0 and 1");
+        this.damping = damping;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Number of iterations of the last ranking.
+     *
+     * @return iterations done.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Ranks the vertices of a Graph.
+     *
+     * @param graph graph.
+     * @return rank of every vertex indexed by vertex number, adding up to 1.
+     */
+    public double[] rank(Graph graph) {
+        return rank(IntAdjacency.of(graph), null);
+    }
+
+    /**
+     * Ranks the vertices of a StructuredGraph following the edges in proportion to their weight.
+     *
+     * @param graph graph.
+     * @return rank of every vertex indexed by vertex id, adding up to 1, 0 for deleted ids.
+     */
+    public double[] rank(StructuredGraph graph) {
+        return rank(IntAdjacency.of(graph), null);
+    }
+
+    /**
+     * Ranks the vertices of a Graph teleporting only to the given sources.
+     *
+     * @param graph   graph.
+     * @param sources vertex numbers.
+     * @return rank of every vertex indexed by vertex number, adding up to 1.
+     */
+    public double[] personalized(Graph graph, int... sources) {
+        return rank(IntAdjacency.of(graph), sources);
+    }
+
+    /**
+     * Ranks the vertices of a StructuredGraph teleporting only to the given sources.
+     *
+     * @param graph   graph.
+     * @param sources vertices of the graph.
+     * @return rank of every vertex indexed by vertex id, adding up to 1, 0 for deleted ids.
+     */
+    public double[] personalized(StructuredGraph graph, Vertex... sources) {
+        int[] ids = new int[sources.length];
+        for (int i = 0; i < sources.length; i++)
+            ids[i] = sources[i].getId();
+        return rank(IntAdjacency.of(graph), ids);
+    }
+
+    private double[] rank(IntAdjacency adjacency, int[] sources) {
+        int n = adjacency.size();
+        double[] teleport = teleport(adjacency, sources);
+        double[] outWeight = new double[n];
+        chunks(n).forEach(c -> {
+            for (int v = c * CHUNK, end = Math.min(n, v + CHUNK); v < end; v++)
+                for (int i = adjacency.offsets[v]; i < adjacency.offsets[v + 1]; i++)
+                    outWeight[v] += adjacency.weight(i);
+        });
+        IntAdjacency reverse = adjacency.reverse();
+        double[] rank = teleport.clone();
+        double[] next = new double[n];
+        double[] share = new double[n];
+        iterations = 0;
+        while (iterations < maxIterations) {
+            iterations++;
+            double[] current = rank;
+            double dangling = chunks(n).mapToDouble(c -> {
+                double sum = 0;
+                for (int v = c * CHUNK, end = Math.min(n, v + CHUNK); v < end; v++) {
+                    if (outWeight[v] > 0)
+                        share[v] = current[v] / outWeight[v];
+                    else
+                        sum += current[v];
+                }
+                return sum;
+            }).sum();
+            double[] pulled = next;
+            double change = chunks(n).mapToDouble(c -> {
+                double sum = 0;
+                for (int v = c * CHUNK, end = Math.min(n, v + CHUNK); v < end; v++) {
+                    double incoming = 0;
+                    for (int i = reverse.offsets[v]; i < reverse.offsets[v + 1]; i++)
+                        incoming += share[reverse.targets[i]] * reverse.weight(i);
+                    pulled[v] = (1 - damping + damping * dangling) * teleport[v] + damping * incoming;
+                    sum += Math.abs(pulled[v] - current[v]);
+                }
+                return sum;
+            }).sum();
+            next = rank;
+            rank = pulled;
+            if (change < tolerance)
+                break;
+        }
+        return rank;
+    }
+
+    /**
+     * Probability of teleporting to each vertex: uniform over the existing vertices, or over the sources.
+     */
+    private static double[] teleport(IntAdjacency adjacency, int[] sources) {
+        int n = adjacency.size();
+        double[] teleport = new double[n];
+        if (null == sources) {
+            int count = 0;
+            for (int v = 0; v < n; v++)
+                if (adjacency.exists(v))
+                    count++;
+            for (int v = 0; v < n; v++)
+                if (adjacency.exists(v))
+                    teleport[v] = 1.0 / count;
+        } else {
+            if (sources.length == 0)
+                throw new IllegalArgumentException("No sources");
+            for (int s : sources) {
+                if (s < 0 || s >= n || !adjacency.exists(s))
+                    throw new IllegalArgumentException("Vertex " + s + " doesn't exist");
+                teleport[s] += 1.0 / sources.length;
+            }
+        }
+        return teleport;
+    }
+
+    private static IntStream chunks(int n) {
+        return IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel();
+    }
+}
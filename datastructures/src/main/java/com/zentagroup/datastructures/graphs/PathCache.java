@@ -0,0 +1,362 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Edge;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Least recently used cache of the results of StructuredGraph.findShortestPath, keyed by the ids of the
+ * origin and the destination and the relationship followed. It's enabled with
+ * StructuredGraph.setPathCache and kept up to date as a listener of the graph.
+ * <p>
+ * Entries are only dropped when a change can alter their result. Besides the path, every entry keeps the
+ * ids of the vertices its search settled, sorted, and their distance from the origin; they are all the
+ * vertices closer than the destination (or every vertex reached, if the destination wasn't). Deleting a
+ * vertex of the path or an edge between two consecutive vertices of it drops the entry, as does deleting
+ * one of its endpoints. Deleting any other edge or vertex can't make the path longer or a shorter one
+ * appear. An added edge can only give a shorter path if it leaves a settled vertex and the distance of
+ * that vertex plus its weight is below the length of the path; otherwise the entry stays. A change is
+ * checked against every entry, a binary search in the settled ids of each, so the cache takes no memory
+ * per settled vertex besides those arrays. Edges without weight count as 1, as in the search.
+ * <p>
+ * The listener methods run while the graph holds the locks of the changed vertices, so they don't wait
+ * for the cache: they queue the change, and it's applied by the next lookup or by the change that finds
+ * the cache free. Results computed while the graph changes are not stored: every change increments a
+ * stamp before it's queued, and a path is only cached if the stamp is the same as when its search started.
+ */
+public class PathCache implements StructuredGraphListener {
+
+    private static final int VERTEX_DELETED = 0;
+    private static final int EDGE_ADDED = 1;
+    private static final int EDGE_DELETED = 2;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicLong stamp = new AtomicLong();
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long evictions;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity maximum number of paths kept.
+     */
+    PathCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    private static class Key {
+        final int origin;
+        final int destination;
+        final Comparable<?> relationship;
+
+        Key(int origin, int destination, Comparable<?> relationship) {
+            this.origin = origin;
+            this.destination = destination;
+            this.relationship = relationship;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return origin == k.origin && destination == k.destination && Objects.equals(relationship, k.relationship);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * origin + destination) + Objects.hashCode(relationship);
+        }
+    }
+
+    private static class Entry {
+        final Key key;
+        final List<Vertex> path;
+        final int[] pathIds;
+        final double length;
+        final int[] settled;
+        final double[] distance;
+
+        Entry(Key key, List<Vertex> path, double length, int[] settled, double[] distance) {
+            this.key = key;
+            this.path = path;
+            this.length = length;
+            this.settled = settled;
+            this.distance = distance;
+            this.pathIds = path.isEmpty() ? new int[]{key.origin, key.destination}
+                    : path.stream().mapToInt(Vertex::getId).toArray();
+        }
+
+        /**
+         * Distance of a settled vertex, or infinity if the search didn't settle it.
+         */
+        double distanceTo(int id) {
+            if (settled.length == 0 || id < settled[0] || id > settled[settled.length - 1])
+                return Double.POSITIVE_INFINITY;
+            int i = Arrays.binarySearch(settled, id);
+            return i < 0 ? Double.POSITIVE_INFINITY : distance[i];
+        }
+
+        boolean hasVertex(int id) {
+            for (int pathId : pathIds)
+                if (pathId == id)
+                    return true;
+            return false;
+        }
+
+        boolean hasStep(int from, int to) {
+            for (int i = 0; i + 1 < pathIds.length; i++)
+                if (pathIds[i] == from && pathIds[i + 1] == to)
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+     * Change of the graph waiting to be checked against the entries. Only the ids are kept, as the
+     * vertices may be freed before it's applied.
+     */
+    private static class Change {
+        final int kind;
+        final int from;
+        final int to;
+        final Comparable<?> relationship;
+        final double weight;
+
+        Change(int kind, int from, int to, Comparable<?> relationship, double weight) {
+            this.kind = kind;
+            this.from = from;
+            this.to = to;
+            this.relationship = relationship;
+            this.weight = weight;
+        }
+
+        boolean affects(Entry entry) {
+            switch (kind) {
+                case VERTEX_DELETED:
+                    return entry.hasVertex(from);
+                case EDGE_DELETED:
+                    return entry.hasStep(from, to);
+                default:
+                    if (null != entry.key.relationship && !entry.key.relationship.equals(relationship))
+                        return false;
+                    return entry.distanceTo(from) + weight < entry.length;
+            }
+        }
+    }
+
+    /**
+     * Looks up a path, counting a hit or a miss.
+     *
+     * @return copy of the cached path, or null if it isn't cached.
+     */
+    List<Vertex> get(Vertex origin, Vertex destination, Comparable<?> relationship) {
+        lock.lock();
+        try {
+            applyChanges();
+            Entry entry = entries.get(new Key(origin.id, destination.id, relationship));
+            if (null == entry) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return new LinkedList<>(entry.path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stamp to pass to put, read before searching a path.
+     */
+    long stamp() {
+        return stamp.get();
+    }
+
+    /**
+     * Caches the result of a search unless the graph changed since the stamp was read.
+     *
+     * @param path     path found, empty if the destination can't be reached.
+     * @param length   weight of the path.
+     * @param settled  ids of the vertices settled by the search.
+     * @param distance distance of each settled vertex from the origin.
+     * @param stamp    stamp read before the search.
+     */
+    void put(Vertex origin, Vertex destination, Comparable<?> relationship, List<Vertex> path,
+             double length, int[] settled, double[] distance, long stamp) {
+        long[] sorted = new long[settled.length];
+        for (int i = 0; i < settled.length; i++)
+            sorted[i] = (long) settled[i] << 32 | i;
+        Arrays.sort(sorted);
+        int[] ids = new int[settled.length];
+        double[] distances = new double[settled.length];
+        for (int i = 0; i < sorted.length; i++) {
+            ids[i] = (int) (sorted[i] >>> 32);
+            distances[i] = distance[(int) sorted[i]];
+        }
+        Key key = new Key(origin.id, destination.id, relationship);
+        Entry entry = new Entry(key, new ArrayList<>(path), path.isEmpty() ? Double.POSITIVE_INFINITY : length,
+                ids, distances);
+        lock.lock();
+        try {
+            if (stamp != this.stamp.get())
+                return;
+            applyChanges();
+            entries.put(key, entry);
+            if (entries.size() > capacity) {
+                Iterator<Entry> eldest = entries.values().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the entries affected by the queued changes. Must be called holding the lock.
+     */
+    private void applyChanges() {
+        Change change;
+        while (null != (change = changes.poll())) {
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                if (change.affects(it.next())) {
+                    it.remove();
+                    invalidations++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues a change and applies the queue if no other thread is using the cache.
+     */
+    private void record(Change change) {
+        stamp.incrementAndGet();
+        changes.add(change);
+        if (lock.tryLock()) {
+            try {
+                applyChanges();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void vertexDeleted(Vertex vertex) {
+        record(new Change(VERTEX_DELETED, vertex.id, vertex.id, null, 0));
+    }
+
+    @Override
+    public void edgeAdded(Edge<?, ?> edge) {
+        record(new Change(EDGE_ADDED, edge.origin.id, edge.vertex.id, edge.relationship, edge.cost()));
+    }
+
+    @Override
+    public void edgeDeleted(Edge<?, ?> edge) {
+        record(new Change(EDGE_DELETED, edge.origin.id, edge.vertex.id, edge.relationship, edge.cost()));
+    }
+
+    /**
+     * Removes every path, keeping the counters.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            changes.clear();
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            applyChanges();
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fraction of the lookups that found the path cached.
+     *
+     * @return hits over lookups, 0 if there weren't lookups.
+     */
+    public double getHitRate() {
+        lock.lock();
+        try {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of paths dropped because a change of the graph could alter them.
+     *
+     * @return invalidations.
+     */
+    public long getInvalidations() {
+        lock.lock();
+        try {
+            applyChanges();
+            return invalidations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of paths dropped to make room for newer ones.
+     *
+     * @return evictions.
+     */
+    public long getEvictions() {
+        lock.lock();
+        try {
+            return evictions;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
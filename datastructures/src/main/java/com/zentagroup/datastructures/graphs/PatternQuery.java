@@ -0,0 +1,536 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.*;
+
+/**
+ * Path pattern query over a StructuredGraph. A pattern is a chain of vertices joined by directed edges:
+ * <pre>
+ * (p:Person {name: 'Shrek'})-[works_at]->(c:Company)&lt;-[supplies]-(v:Vendor)
+ * </pre>
+ * Each vertex has an optional variable, an optional type and optional attributes that must be equal,
+ * written as quoted strings, integers, decimals, true, false or null. Each edge has an optional
+ * relationship, matched as a string: {@code -[rel]->}, {@code <-[rel]-}, {@code -->} or {@code <--}. A
+ * variable used twice must match the same vertex, so cycles can be written as well.
+ * <p>
+ * Before running, the query is planned against the graph: the cardinality of each type, the selectivity
+ * of the attributes and the average degree of each edge are estimated from a sample of the vertices, and
+ * the match starts at the vertex with the cheapest expansion, growing the chain one edge at a time towards
+ * the side that produces fewer partial matches. Matches are produced lazily by following the edge indexes
+ * of the vertices already matched, so vertices are never looked up by their data after the first one and
+ * a limit stops the search as soon as it's reached. Vertices already at hand can be given for some
+ * variables so not even the first one is looked up. Each combination of vertices is returned once.
+ */
+public class PatternQuery {
+
+    private static final int SAMPLE = 256;
+
+    private final String[] names;
+    private final String[] tags;
+    private final HashMap<String, Object>[] attributes;
+    private final String[] relationships;
+    private final boolean[] forward;
+    private final int[] slot;
+    private final int slots;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private PatternQuery(List<String> names, List<String> tags, List<HashMap<String, Object>> attributes,
+                         List<String> relationships, List<Boolean> forward) {
+        int n = names.size();
+        this.names = names.toArray(new String[n]);
+        this.tags = tags.toArray(new String[n]);
+        this.attributes = attributes.toArray(new HashMap[n]);
+        this.relationships = relationships.toArray(new String[n - 1]);
+        this.forward = new boolean[n - 1];
+        for (int i = 0; i < n - 1; i++)
+            this.forward[i] = forward.get(i);
+        this.slot = new int[n];
+        HashMap<String, Integer> slotByName = new HashMap<>();
+        int[] first = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            Integer s = null == this.names[i] ? null : slotByName.get(this.names[i]);
+            if (null == s) {
+                s = count++;
+                first[s] = i;
+                if (null != this.names[i])
+                    slotByName.put(this.names[i], s);
+            } else if (null != this.tags[i] && null != this.tags[first[s]]
+                    && !this.tags[i].equals(this.tags[first[s]])) {
+                throw new IllegalArgumentException("Variable " + this.names[i] + " has two types");
+            }
+            slot[i] = s;
+        }
+        for (int i = 0; i < n; i++)
+            if (null == this.tags[i])
+                this.tags[i] = this.tags[first[slot[i]]];
+        this.slots = count;
+    }
+
+    /**
+     * Parses a path pattern.
+     *
+     * @param pattern path pattern.
+     * @return query.
+     * @throws IllegalArgumentException if the pattern is malformed.
+     */
+    public static PatternQuery parse(String pattern) {
+        return new Parser(pattern).parse();
+    }
+
+    /**
+     * Finds the matches of the pattern.
+     *
+     * @param graph graph to search.
+     * @param limit maximum number of matches, or a negative number for no limit.
+     * @return list of matches, each one mapping the variables of the pattern to vertices.
+     */
+    public List<Map<String, Vertex>> list(StructuredGraph graph, int limit) {
+        List<Map<String, Vertex>> matches = new ArrayList<>();
+        iterator(graph, Collections.<String, Vertex>emptyMap(), limit).forEachRemaining(matches::add);
+        return matches;
+    }
+
+    /**
+     * Plans the query and creates a lazy iterator of its matches. In concurrent mode the graph can be
+     * modified meanwhile; every match was valid when its last edge was followed.
+     *
+     * @param graph    graph to search.
+     * @param bindings vertices already known for some variables, which are not looked up.
+     * @param limit    maximum number of matches, or a negative number for no limit.
+     * @return iterator of matches, each one mapping the variables of the pattern to vertices.
+     */
+    public Iterator<Map<String, Vertex>> iterator(StructuredGraph graph, Map<String, Vertex> bindings, int limit) {
+        return new Matcher(graph, plan(graph, bindings), bindings, limit);
+    }
+
+    /**
+     * Describes the plan chosen for a graph, one step per line with its estimated number of partial
+     * matches.
+     *
+     * @param graph graph the query would run on.
+     * @return plan description.
+     */
+    public String explain(StructuredGraph graph) {
+        Plan plan = plan(graph, Collections.<String, Vertex>emptyMap());
+        StringBuilder sb = new StringBuilder();
+        sb.append("scan ").append(describe(plan.order[0])).append(" rows ")
+                .append(Math.round(plan.rows[0])).append('\n');
+        for (int i = 1; i < plan.order.length; i++) {
+            int e = plan.edge[i];
+            sb.append("expand ").append(describe(plan.from[i]))
+                    .append(plan.egress[i] ? " -[" : " <-[").append(null == relationships[e] ? "" : relationships[e])
+                    .append(plan.egress[i] ? "]-> " : "]- ").append(describe(plan.order[i]))
+                    .append(" rows ").append(Math.round(plan.rows[i])).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private String describe(int node) {
+        return "(" + (null == names[node] ? "" : names[node]) + (null == tags[node] ? "" : ":" + tags[node])
+                + (attributes[node].isEmpty() ? "" : " " + attributes[node]) + ")";
+    }
+
+    /**
+     * Order in which the vertices of the pattern are matched. Every step after the first follows the edge
+     * between an already matched vertex and a new one.
+     */
+    private static class Plan {
+        final int[] order;
+        final int[] from;
+        final int[] edge;
+        final boolean[] egress;
+        final double[] rows;
+        double cost;
+
+        Plan(int n) {
+            order = new int[n];
+            from = new int[n];
+            edge = new int[n];
+            egress = new boolean[n];
+            rows = new double[n];
+        }
+    }
+
+    /**
+     * Chooses the plan with the lowest estimated cost, the cost being the vertices scanned at the start
+     * plus the edges read and the partial matches produced by every step. Each start is tried and the
+     * chain is grown greedily towards the cheaper side. Variables given a vertex count as a single match.
+     */
+    private Plan plan(StructuredGraph graph, Map<String, Vertex> bindings) {
+        int n = names.length;
+        double[] cardinality = new double[n];
+        double[] selectivity = new double[n];
+        boolean[] given = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            given[i] = null != names[i] && bindings.containsKey(names[i]);
+            Collection<Vertex> candidates = graph.verticesOf(tags[i]);
+            cardinality[i] = Math.max(1, candidates.size());
+            selectivity[i] = given[i] ? 1 / cardinality[i] : selectivity(candidates, attributes[i]);
+        }
+        double[] right = new double[n - 1];
+        double[] left = new double[n - 1];
+        for (int e = 0; e < n - 1; e++) {
+            right[e] = degree(graph, e, e, e + 1);
+            left[e] = degree(graph, e, e + 1, e);
+        }
+        Plan best = null;
+        for (int start = 0; start < n; start++) {
+            Plan plan = new Plan(n);
+            plan.order[0] = start;
+            plan.from[0] = -1;
+            plan.rows[0] = Math.max(1, cardinality[start] * selectivity[start]);
+            plan.cost = (given[start] ? 1 : cardinality[start]) + plan.rows[0];
+            int lo = start;
+            int hi = start;
+            for (int step = 1; step < n; step++) {
+                double rows = plan.rows[step - 1];
+                double toRight = hi < n - 1 ? rows * right[hi] : Double.POSITIVE_INFINITY;
+                double toLeft = lo > 0 ? rows * left[lo - 1] : Double.POSITIVE_INFINITY;
+                double rightRows = hi < n - 1 ? toRight * matched(hi + 1, lo, hi, selectivity, cardinality) : 0;
+                double leftRows = lo > 0 ? toLeft * matched(lo - 1, lo, hi, selectivity, cardinality) : 0;
+                if (toRight + rightRows <= toLeft + leftRows) {
+                    plan.from[step] = hi;
+                    plan.edge[step] = hi;
+                    plan.egress[step] = forward[hi];
+                    plan.order[step] = ++hi;
+                    plan.rows[step] = rightRows;
+                    plan.cost += toRight + rightRows;
+                } else {
+                    plan.from[step] = lo;
+                    plan.edge[step] = lo - 1;
+                    plan.egress[step] = !forward[lo - 1];
+                    plan.order[step] = --lo;
+                    plan.rows[step] = leftRows;
+                    plan.cost += toLeft + leftRows;
+                }
+            }
+            if (null == best || plan.cost < best.cost)
+                best = plan;
+        }
+        return best;
+    }
+
+    /**
+     * Fraction of the vertices reached by an expansion that match the pattern vertex. If its variable
+     * was already matched only one vertex of the type is accepted.
+     */
+    private double matched(int node, int lo, int hi, double[] selectivity, double[] cardinality) {
+        for (int i = lo; i <= hi; i++)
+            if (slot[i] == slot[node])
+                return 1 / cardinality[node];
+        return selectivity[node];
+    }
+
+    /**
+     * Estimated fraction of the vertices that have the given attributes. The frequency in a sample of the
+     * vertices is used when some of them match. Otherwise each attribute is assumed to select one of its
+     * distinct values in the sample, and a key with a different value in every sampled vertex is taken as
+     * unique.
+     */
+    private static double selectivity(Collection<Vertex> candidates, HashMap<String, Object> attributes) {
+        if (attributes.isEmpty())
+            return 1;
+        int sampled = 0;
+        int matched = 0;
+        HashMap<String, HashSet<Object>> distinct = new HashMap<>();
+        for (Vertex v : candidates) {
+            if (sampled++ == SAMPLE)
+                break;
+            if (v.matches(attributes))
+                matched++;
+            for (String key : attributes.keySet())
+                distinct.computeIfAbsent(key, k -> new HashSet<>()).add(v.getProperty(key));
+        }
+        if (sampled == 0 || matched > 0)
+            return sampled == 0 ? 1 : (double) matched / sampled;
+        double selectivity = 1;
+        for (HashSet<Object> values : distinct.values())
+            selectivity /= values.size() == sampled ? candidates.size() : values.size() + 1;
+        return Math.max(selectivity, 1.0 / candidates.size());
+    }
+
+    /**
+     * Average number of edges of a pattern edge per vertex on one side, sampled from the vertices of its type.
+     */
+    private double degree(StructuredGraph graph, int e, int fromNode, int toNode) {
+        boolean egress = (fromNode == e) == forward[e];
+        int sampled = 0;
+        int[] count = new int[1];
+        for (Vertex v : graph.verticesOf(tags[fromNode])) {
+            if (sampled++ == SAMPLE)
+                break;
+            graph.forEachEdge(v, egress, tags[toNode], relationships[e], edge -> count[0]++);
+        }
+        return sampled == 0 ? 0 : (double) count[0] / sampled;
+    }
+
+    /**
+     * Pipelined execution of a plan: one cursor per step over the candidates of its vertex, advanced like
+     * nested loops so only the neighbors of the matched vertices are held in memory.
+     */
+    private class Matcher implements Iterator<Map<String, Vertex>> {
+        private final StructuredGraph graph;
+        private final Plan plan;
+        private final Vertex[] bound = new Vertex[slots];
+        private final Iterator<Vertex>[] cursors;
+        private final boolean[] rebinds;
+        private final HashSet<Vertex> seen = new HashSet<>();
+        private int remaining;
+        private int depth;
+        private Map<String, Vertex> next;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Matcher(StructuredGraph graph, Plan plan, Map<String, Vertex> bindings, int limit) {
+            this.graph = graph;
+            this.plan = plan;
+            this.remaining = limit < 0 ? Integer.MAX_VALUE : limit;
+            this.cursors = new Iterator[plan.order.length];
+            this.rebinds = new boolean[plan.order.length];
+            for (int step = 0; step < rebinds.length; step++) {
+                int node = plan.order[step];
+                Vertex given = null == names[node] ? null : bindings.get(names[node]);
+                if (null != given) {
+                    bound[slot[node]] = given;
+                    rebinds[step] = true;
+                }
+                for (int i = 0; i < step; i++)
+                    rebinds[step] |= slot[plan.order[i]] == slot[node];
+            }
+            Vertex start = bound[slot[plan.order[0]]];
+            cursors[0] = null != start ? Collections.singleton(start).iterator()
+                    : graph.verticesOf(tags[plan.order[0]]).iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (null != next)
+                return true;
+            if (remaining == 0 || depth < 0)
+                return false;
+            while (depth >= 0) {
+                Vertex v = advance(depth);
+                if (null == v) {
+                    cursors[depth--] = null;
+                    continue;
+                }
+                bound[slot[plan.order[depth]]] = v;
+                if (depth == plan.order.length - 1) {
+                    next = row();
+                    remaining--;
+                    return true;
+                }
+                depth++;
+                cursors[depth] = expand(depth);
+            }
+            return false;
+        }
+
+        @Override
+        public Map<String, Vertex> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Map<String, Vertex> row = next;
+            next = null;
+            return row;
+        }
+
+        /**
+         * Next candidate of a step that matches its vertex. A variable matched by a previous step only
+         * accepts the same vertex.
+         */
+        private Vertex advance(int step) {
+            int node = plan.order[step];
+            Iterator<Vertex> cursor = cursors[step];
+            while (cursor.hasNext()) {
+                Vertex v = cursor.next();
+                if (v.deleted || !v.matches(attributes[node]) || rebinds[step] && bound[slot[node]] != v)
+                    continue;
+                return v;
+            }
+            return null;
+        }
+
+        /**
+         * Neighbors of the matched vertex of a step through the edge of the step, each one once.
+         */
+        private Iterator<Vertex> expand(int step) {
+            Vertex from = bound[slot[plan.from[step]]];
+            int node = plan.order[step];
+            List<Vertex> neighbors = new ArrayList<>();
+            seen.clear();
+            graph.forEachEdge(from, plan.egress[step], tags[node], relationships[plan.edge[step]], edge -> {
+                Vertex other = edge.opposite(from);
+                if (seen.add(other))
+                    neighbors.add(other);
+            });
+            return neighbors.iterator();
+        }
+
+        private Map<String, Vertex> row() {
+            Map<String, Vertex> row = new LinkedHashMap<>();
+            for (int i = 0; i < names.length; i++)
+                if (null != names[i])
+                    row.put(names[i], bound[slot[i]]);
+            return row;
+        }
+    }
+
+    /**
+     * Recursive descent parser of path patterns.
+     */
+    private static class Parser {
+        private final String text;
+        private int pos;
+        private final List<String> names = new ArrayList<>();
+        private final List<String> tags = new ArrayList<>();
+        private final List<HashMap<String, Object>> attributes = new ArrayList<>();
+        private final List<String> relationships = new ArrayList<>();
+        private final List<Boolean> forward = new ArrayList<>();
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        PatternQuery parse() {
+            node();
+            while (skipSpaces() < text.length()) {
+                edge();
+                node();
+            }
+            return new PatternQuery(names, tags, attributes, relationships, forward);
+        }
+
+        private void node() {
+            expect('(');
+            skipSpaces();
+            names.add(identifier());
+            skipSpaces();
+            String tag = null;
+            if (accept(':')) {
+                skipSpaces();
+                tag = identifier();
+                if (null == tag)
+                    throw error("Expected type");
+                skipSpaces();
+            }
+            tags.add(tag);
+            HashMap<String, Object> values = new HashMap<>();
+            if (accept('{')) {
+                skipSpaces();
+                while (!accept('}')) {
+                    if (!values.isEmpty()) {
+                        expect(',');
+                        skipSpaces();
+                    }
+                    String key = identifier();
+                    if (null == key)
+                        throw error("Expected attribute name");
+                    skipSpaces();
+                    expect(':');
+                    skipSpaces();
+                    values.put(key, value());
+                    skipSpaces();
+                }
+                skipSpaces();
+            }
+            attributes.add(values);
+            expect(')');
+        }
+
+        private void edge() {
+            boolean incoming = accept('<');
+            expect('-');
+            String relationship = null;
+            if (accept('[')) {
+                skipSpaces();
+                accept(':');
+                relationship = identifier();
+                skipSpaces();
+                expect(']');
+            }
+            expect('-');
+            boolean outgoing = accept('>');
+            if (incoming == outgoing)
+                throw error("Edge must have one direction");
+            relationships.add(relationship);
+            forward.add(outgoing);
+            skipSpaces();
+        }
+
+        private String identifier() {
+            if (accept('`')) {
+                int end = text.indexOf('`', pos);
+                if (end < 0)
+                    throw error("Unclosed `");
+                String name = text.substring(pos, end);
+                pos = end + 1;
+                return name;
+            }
+            int start = pos;
+            while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_'))
+                pos++;
+            return start == pos ? null : text.substring(start, pos);
+        }
+
+        private Object value() {
+            if (pos < text.length() && (text.charAt(pos) == '\'' || text.charAt(pos) == '"')) {
+                char quote = text.charAt(pos++);
+                int end = text.indexOf(quote, pos);
+                if (end < 0)
+                    throw error("Unclosed string");
+                String value = text.substring(pos, end);
+                pos = end + 1;
+                return value;
+            }
+            int start = pos;
+            while (pos < text.length() && ",} ".indexOf(text.charAt(pos)) < 0)
+                pos++;
+            String literal = text.substring(start, pos);
+            switch (literal) {
+                case "true":
+                    return Boolean.TRUE;
+                case "false":
+                    return Boolean.FALSE;
+                case "null":
+                    return null;
+            }
+            try {
+                long value = Long.parseLong(literal);
+                if (value == (int) value)
+                    return (int) value;
+                return value;
+            } catch (NumberFormatException ex) {
+                try {
+                    return Double.parseDouble(literal);
+                } catch (NumberFormatException notNumber) {
+                    throw error("Invalid value " + literal);
+                }
+            }
+        }
+
+        private int skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+                pos++;
+            return pos;
+        }
+
+        private boolean accept(char c) {
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!accept(c))
+                throw error("Expected '" + c + "'");
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + pos + " in " + text);
+        }
+    }
+}
@@ -0,0 +1,589 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+
+/**
+ * Properties of the vertices of one type, stored by column instead of in a map per vertex. Every vertex
+ * gets a row, and every property name a column with one entry per row and a bitmap of the rows that have
+ * a value. Columns of Integer, Long, Double and Boolean values keep them in primitive arrays, and columns
+ * of strings keep an int code per row and each distinct string once, as long as there are at most
+ * MAX_STRINGS of them; a column starts with the type of its first value and turns into a column of objects
+ * if a value of another type, or one string too many, is stored later. Columns are found by the code of
+ * their name in the Dictionary, so names are kept once for every graph instead of once per vertex.
+ * <p>
+ * Lookups by attribute filter a bitmap of candidate rows one column at a time, comparing primitive values
+ * in a loop over the words of the bitmap, and only the rows left at the end are turned into vertices.
+ * <p>
+ * Null values aren't stored: setting a property to null removes it, as reading a missing property gives
+ * null. Rows of deleted vertices are kept while a snapshot can see them and then reused; the values of a
+ * freed row are handed back to its vertex so it still has them.
+ */
+class PropertyTable {
+
+    private final StripedLocks lock;
+    private Column[] columns = new Column[16];
+    private int[] keys = new int[0];
+    private Vertex[] vertices = new Vertex[16];
+    private long[] occupied = new long[1];
+    private int rows;
+    private int[] free = new int[0];
+    private int numFree;
+
+    /**
+     * Constructor.
+     *
+     * @param concurrent true if several threads can use the table at the same time.
+     */
+    PropertyTable(boolean concurrent) {
+        lock = new StripedLocks(1, concurrent);
+    }
+
+    /**
+     * Moves the properties a new vertex was created with to a new row.
+     *
+     * @param v vertex.
+     */
+    void add(Vertex v) {
+        Lock write = lock.writeLock(0);
+        write.lock();
+        try {
+            int row;
+            if (numFree > 0) {
+                row = free[--numFree];
+            } else {
+                row = rows++;
+                if (row == vertices.length) {
+                    vertices = Arrays.copyOf(vertices, row * 2);
+                    for (int key : keys)
+                        columns[key].grow(row * 2);
+                }
+                if (row >> 6 >= occupied.length)
+                    occupied = Arrays.copyOf(occupied, occupied.length * 2);
+            }
+            vertices[row] = v;
+            occupied[row >> 6] |= 1L << row;
+            if (null != v.pending) {
+                for (Map.Entry<String, Object> entry : v.pending.entrySet())
+                    put(row, Dictionary.encode(entry.getKey()), entry.getValue());
+            }
+            v.row = row;
+            v.table = this;
+            v.pending = null;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Frees the row of a deleted vertex that nothing can find anymore, so a new vertex can use it. The
+     * vertex keeps its properties in a map of its own.
+     *
+     * @param v vertex.
+     */
+    void free(Vertex v) {
+        Lock write = lock.writeLock(0);
+        write.lock();
+        try {
+            int row = v.row;
+            HashMap<String, Object> data = new HashMap<>();
+            for (int key : keys) {
+                Column column = columns[key];
+                if (column.has(row)) {
+                    data.put(Dictionary.decode(key), column.get(row));
+                    column.clear(row);
+                }
+            }
+            vertices[row] = null;
+            occupied[row >> 6] &= ~(1L << row);
+            if (numFree == free.length)
+                free = Arrays.copyOf(free, Math.max(16, numFree * 2));
+            free[numFree++] = row;
+            v.pending = data;
+            v.table = null;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Column of a property.
+     *
+     * @param key code of the name of the property, or Dictionary.NONE.
+     * @return column, or null if no vertex of the table has had the property.
+     */
+    private Column column(int key) {
+        return key >= 0 && key < columns.length ? columns[key] : null;
+    }
+
+    /**
+     * Stores a value, replacing the column with a column of objects if it can't hold it.
+     */
+    private void put(int row, int key, Object value) {
+        Column column = column(key);
+        if (null == value) {
+            if (null != column)
+                column.clear(row);
+            return;
+        }
+        if (null == column) {
+            if (key >= columns.length)
+                columns = Arrays.copyOf(columns, Math.max(key + 1, columns.length * 2));
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            keys[keys.length - 1] = key;
+            column = Column.of(value, vertices.length);
+            columns[key] = column;
+        } else if (!column.accepts(value)) {
+            column = column.toObjects(vertices.length);
+            columns[key] = column;
+        }
+        column.set(row, value);
+    }
+
+    void set(Vertex v, String key, Object value) {
+        Lock write = lock.writeLock(0);
+        write.lock();
+        try {
+            if (v.table != this) {
+                if (null == value)
+                    v.pending.remove(key);
+                else
+                    v.pending.put(key, value);
+                return;
+            }
+            put(v.row, null == value ? Dictionary.code(key) : Dictionary.encode(key), value);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Reads a property of a vertex. If the row of the vertex was freed meanwhile the value is read from
+     * the properties handed back to it.
+     */
+    Object get(Vertex v, String key) {
+        Lock read = lock.readLock(0);
+        read.lock();
+        try {
+            if (v.table != this)
+                return v.pending.get(key);
+            Column column = column(Dictionary.code(key));
+            return null == column || !column.has(v.row) ? null : column.get(v.row);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Copies the properties of a vertex.
+     */
+    HashMap<String, Object> copy(Vertex v) {
+        Lock read = lock.readLock(0);
+        read.lock();
+        try {
+            if (v.table != this)
+                return new HashMap<>(v.pending);
+            HashMap<String, Object> data = new HashMap<>();
+            for (int key : keys) {
+                if (columns[key].has(v.row))
+                    data.put(Dictionary.decode(key), columns[key].get(v.row));
+            }
+            return data;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a vertex has every given attribute with the same value.
+     */
+    boolean matches(Vertex v, Map<String, Object> attributes) {
+        Lock read = lock.readLock(0);
+        read.lock();
+        try {
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                Object value;
+                if (v.table != this) {
+                    value = v.pending.get(entry.getKey());
+                } else {
+                    Column column = column(Dictionary.code(entry.getKey()));
+                    value = null == column || !column.has(v.row) ? null : column.get(v.row);
+                }
+                if (!Objects.equals(value, entry.getValue()))
+                    return false;
+            }
+            return true;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Finds the vertices with every given attribute, filtering the rows column by column.
+     *
+     * @param attributes names and values; a null value matches the rows without the property.
+     * @param visible    condition the vertices found must also meet.
+     * @return vertices in row order.
+     */
+    List<Vertex> find(Map<String, Object> attributes, Predicate<Vertex> visible) {
+        List<Vertex> found = new ArrayList<>();
+        Lock read = lock.readLock(0);
+        read.lock();
+        try {
+            long[] candidates = Arrays.copyOf(occupied, (rows + 63) >> 6);
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                Column column = column(Dictionary.code(entry.getKey()));
+                if (null != column) {
+                    column.filter(entry.getValue(), candidates);
+                } else if (null != entry.getValue()) {
+                    return found;
+                }
+            }
+            for (int w = 0; w < candidates.length; w++) {
+                for (long bits = candidates[w]; bits != 0; bits &= bits - 1) {
+                    Vertex v = vertices[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                    if (visible.test(v))
+                        found.add(v);
+                }
+            }
+            return found;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Values of a property by row. The bitmap of the rows with a value is shared by every type.
+     */
+    abstract static class Column {
+        long[] present;
+
+        Column(int capacity) {
+            present = new long[(capacity + 63) >> 6];
+        }
+
+        static Column of(Object value, int capacity) {
+            if (value instanceof Integer)
+                return new IntColumn(capacity);
+            if (value instanceof Long)
+                return new LongColumn(capacity, false);
+            if (value instanceof Double)
+                return new LongColumn(capacity, true);
+            if (value instanceof Boolean)
+                return new BooleanColumn(capacity);
+            if (value instanceof String)
+                return new StringColumn(capacity);
+            return new ObjectColumn(capacity);
+        }
+
+        boolean has(int row) {
+            return (present[row >> 6] & 1L << row) != 0;
+        }
+
+        void grow(int capacity) {
+            present = Arrays.copyOf(present, (capacity + 63) >> 6);
+        }
+
+        void set(int row, Object value) {
+            present[row >> 6] |= 1L << row;
+        }
+
+        void clear(int row) {
+            present[row >> 6] &= ~(1L << row);
+        }
+
+        /**
+         * Copies the column into a column of objects.
+         */
+        Column toObjects(int capacity) {
+            ObjectColumn objects = new ObjectColumn(capacity);
+            for (int w = 0; w < present.length; w++) {
+                for (long bits = present[w]; bits != 0; bits &= bits - 1) {
+                    int row = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    objects.set(row, get(row));
+                }
+            }
+            return objects;
+        }
+
+        /**
+         * Keeps the candidate rows whose value equals the given one, or that have no value if it's null.
+         */
+        void filter(Object value, long[] candidates) {
+            if (null == value) {
+                for (int w = 0; w < candidates.length; w++)
+                    candidates[w] &= ~present[w];
+            } else if (!accepts(value)) {
+                Arrays.fill(candidates, 0);
+            } else {
+                filterPresent(value, candidates);
+            }
+        }
+
+        abstract boolean accepts(Object value);
+
+        abstract Object get(int row);
+
+        /**
+         * Keeps the candidate rows that have a value equal to a value the column accepts.
+         */
+        abstract void filterPresent(Object value, long[] candidates);
+    }
+
+    static class IntColumn extends Column {
+        int[] values;
+
+        IntColumn(int capacity) {
+            super(capacity);
+            values = new int[capacity];
+        }
+
+        @Override
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Integer;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            super.set(row, value);
+            values[row] = (Integer) value;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void filterPresent(Object value, long[] candidates) {
+            int x = (Integer) value;
+            for (int w = 0; w < candidates.length; w++) {
+                long keep = 0;
+                for (long bits = candidates[w] & present[w]; bits != 0; bits &= bits - 1) {
+                    int b = Long.numberOfTrailingZeros(bits);
+                    if (values[(w << 6) + b] == x)
+                        keep |= 1L << b;
+                }
+                candidates[w] = keep;
+            }
+        }
+    }
+
+    /**
+     * Column of Long values, or of Double values kept as their bits, which compare like Double.equals.
+     */
+    static class LongColumn extends Column {
+        final boolean doubles;
+        long[] values;
+
+        LongColumn(int capacity, boolean doubles) {
+            super(capacity);
+            this.doubles = doubles;
+            values = new long[capacity];
+        }
+
+        @Override
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return doubles ? value instanceof Double : value instanceof Long;
+        }
+
+        private long bitsOf(Object value) {
+            return doubles ? Double.doubleToLongBits((Double) value) : (Long) value;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            super.set(row, value);
+            values[row] = bitsOf(value);
+        }
+
+        @Override
+        Object get(int row) {
+            return doubles ? (Object) Double.longBitsToDouble(values[row]) : (Object) values[row];
+        }
+
+        @Override
+        void filterPresent(Object value, long[] candidates) {
+            long x = bitsOf(value);
+            for (int w = 0; w < candidates.length; w++) {
+                long keep = 0;
+                for (long bits = candidates[w] & present[w]; bits != 0; bits &= bits - 1) {
+                    int b = Long.numberOfTrailingZeros(bits);
+                    if (values[(w << 6) + b] == x)
+                        keep |= 1L << b;
+                }
+                candidates[w] = keep;
+            }
+        }
+    }
+
+    static class BooleanColumn extends Column {
+        long[] values;
+
+        BooleanColumn(int capacity) {
+            super(capacity);
+            values = new long[present.length];
+        }
+
+        @Override
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, present.length);
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Boolean;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            super.set(row, value);
+            if ((Boolean) value)
+                values[row >> 6] |= 1L << row;
+            else
+                values[row >> 6] &= ~(1L << row);
+        }
+
+        @Override
+        Object get(int row) {
+            return (values[row >> 6] & 1L << row) != 0;
+        }
+
+        @Override
+        void filterPresent(Object value, long[] candidates) {
+            boolean x = (Boolean) value;
+            for (int w = 0; w < candidates.length; w++)
+                candidates[w] &= present[w] & (x ? values[w] : ~values[w]);
+        }
+    }
+
+    /**
+     * Column of String values, each row keeping the code of its string in the column. Rows are compared by
+     * their codes, and a string is only hashed once per lookup to find its code.
+     */
+    static class StringColumn extends Column {
+        static final int MAX_STRINGS = 1024;
+
+        final HashMap<String, Integer> codes = new HashMap<>();
+        final ArrayList<String> strings = new ArrayList<>();
+        int[] values;
+
+        StringColumn(int capacity) {
+            super(capacity);
+            values = new int[capacity];
+        }
+
+        @Override
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof String && (codes.size() < MAX_STRINGS || codes.containsKey(value));
+        }
+
+        @Override
+        void set(int row, Object value) {
+            super.set(row, value);
+            Integer code = codes.get(value);
+            if (null == code) {
+                code = strings.size();
+                codes.put((String) value, code);
+                strings.add((String) value);
+            }
+            values[row] = code;
+        }
+
+        @Override
+        Object get(int row) {
+            return strings.get(values[row]);
+        }
+
+        @Override
+        void filterPresent(Object value, long[] candidates) {
+            Integer code = codes.get(value);
+            if (null == code) {
+                Arrays.fill(candidates, 0);
+                return;
+            }
+            int x = code;
+            for (int w = 0; w < candidates.length; w++) {
+                long keep = 0;
+                for (long bits = candidates[w] & present[w]; bits != 0; bits &= bits - 1) {
+                    int b = Long.numberOfTrailingZeros(bits);
+                    if (values[(w << 6) + b] == x)
+                        keep |= 1L << b;
+                }
+                candidates[w] = keep;
+            }
+        }
+    }
+
+    static class ObjectColumn extends Column {
+        Object[] values;
+
+        ObjectColumn(int capacity) {
+            super(capacity);
+            values = new Object[capacity];
+        }
+
+        @Override
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return true;
+        }
+
+        @Override
+        void set(int row, Object value) {
+            super.set(row, value);
+            values[row] = value;
+        }
+
+        @Override
+        void clear(int row) {
+            super.clear(row);
+            values[row] = null;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void filterPresent(Object value, long[] candidates) {
+            for (int w = 0; w < candidates.length; w++) {
+                long keep = 0;
+                for (long bits = candidates[w] & present[w]; bits != 0; bits &= bits - 1) {
+                    int b = Long.numberOfTrailingZeros(bits);
+                    if (values[(w << 6) + b].equals(value))
+                        keep |= 1L << b;
+                }
+                candidates[w] = keep;
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Edge;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Minimum spanning forest of a StructuredGraph: the edges of least total weight that connect every vertex
+ * with all the vertices it's connected to, ignoring the direction of the edges. It's a spanning tree when
+ * the graph is connected. Null weights count as 1 and edges from a vertex to itself are ignored.
+ * <p>
+ * It can be found with Kruskal's algorithm, which sorts the edges in parallel and adds them in order of
+ * weight when they join two trees, or with Boruvka's algorithm, where every round each tree picks in
+ * parallel the lightest edge leaving it and all of them are added at once, so there are at most log n
+ * rounds. Ties are broken in the same way by both, so they return the same forest.
+ */
+public class SpanningForest {
+
+    private final List<Edge<?, ?>> edges;
+    private final double totalWeight;
+    private final int trees;
+
+    private SpanningForest(List<Edge<?, ?>> edges, double totalWeight, int trees) {
+        this.edges = Collections.unmodifiableList(edges);
+        this.totalWeight = totalWeight;
+        this.trees = trees;
+    }
+
+    /**
+     * Edges of the graph as arrays, in order of vertex id.
+     */
+    private static class EdgeList {
+        final int vertices;
+        final Edge<?, ?>[] edges;
+        final int[] from;
+        final int[] to;
+        final double[] weight;
+        final int existing;
+
+        EdgeList(StructuredGraph graph) {
+            vertices = graph.vertexIdBound();
+            List<Edge<?, ?>> all = new ArrayList<>();
+            int count = 0;
+            for (int id = 0; id < vertices; id++) {
+                Vertex v = graph.findVertexById(id);
+                if (null == v)
+                    continue;
+                count++;
+                for (Edge<?, ?> edge : graph.egressOf(v)) {
+                    if (edge.vertex != v && edge.vertex.id < vertices)
+                        all.add(edge);
+                }
+            }
+            existing = count;
+            edges = all.toArray(new Edge<?, ?>[0]);
+            from = new int[edges.length];
+            to = new int[edges.length];
+            weight = new double[edges.length];
+            for (int i = 0; i < edges.length; i++) {
+                from[i] = edges[i].origin.id;
+                to[i] = edges[i].vertex.id;
+                weight[i] = edges[i].cost();
+            }
+        }
+
+        boolean lighter(int e, int f) {
+            return weight[e] < weight[f] || weight[e] == weight[f] && e < f;
+        }
+    }
+
+    /**
+     * Finds the forest with Kruskal's algorithm.
+     *
+     * @param graph graph.
+     * @return minimum spanning forest.
+     */
+    public static SpanningForest kruskal(StructuredGraph graph) {
+        EdgeList list = new EdgeList(graph);
+        // The sort is stable, so edges of the same weight keep their order as in lighter.
+        Edge<?, ?>[] order = list.edges.clone();
+        Arrays.parallelSort(order, Comparator.comparingDouble(Edge::cost));
+        int[] parent = new int[list.vertices];
+        int[] size = new int[list.vertices];
+        for (int v = 0; v < list.vertices; v++) {
+            parent[v] = v;
+            size[v] = 1;
+        }
+        List<Edge<?, ?>> forest = new ArrayList<>();
+        double total = 0;
+        for (Edge<?, ?> e : order) {
+            if (union(parent, size, e.origin.id, e.vertex.id)) {
+                forest.add(e);
+                total += e.cost();
+            }
+        }
+        return new SpanningForest(forest, total, list.existing - forest.size());
+    }
+
+    /**
+     * Finds the forest with Boruvka's algorithm, looking for the lightest edge of every tree in parallel.
+     *
+     * @param graph graph.
+     * @return minimum spanning forest.
+     */
+    public static SpanningForest boruvka(StructuredGraph graph) {
+        EdgeList list = new EdgeList(graph);
+        int n = list.vertices;
+        int[] parent = new int[n];
+        int[] size = new int[n];
+        int[] tree = new int[n];
+        for (int v = 0; v < n; v++) {
+            parent[v] = v;
+            size[v] = 1;
+            tree[v] = v;
+        }
+        AtomicIntegerArray lightest = new AtomicIntegerArray(n);
+        int[] remaining = IntStream.range(0, list.edges.length).toArray();
+        List<Edge<?, ?>> forest = new ArrayList<>();
+        double total = 0;
+        while (remaining.length > 0) {
+            for (int v = 0; v < n; v++)
+                lightest.set(v, -1);
+            int[] edges = remaining;
+            Arrays.stream(edges).parallel().forEach(e -> {
+                offer(list, lightest, tree[list.from[e]], e);
+                offer(list, lightest, tree[list.to[e]], e);
+            });
+            for (int v = 0; v < n; v++) {
+                int e = lightest.get(v);
+                if (e >= 0 && union(parent, size, list.from[e], list.to[e])) {
+                    forest.add(list.edges[e]);
+                    total += list.weight[e];
+                }
+            }
+            IntStream.range(0, n).parallel().forEach(v -> tree[v] = root(parent, v));
+            remaining = Arrays.stream(edges).parallel()
+                    .filter(e -> tree[list.from[e]] != tree[list.to[e]]).toArray();
+        }
+        return new SpanningForest(forest, total, list.existing - forest.size());
+    }
+
+    /**
+     * Keeps an edge as the lightest one leaving a tree if it's lighter than the current one.
+     */
+    private static void offer(EdgeList list, AtomicIntegerArray lightest, int tree, int e) {
+        int current = lightest.get(tree);
+        while (current < 0 || list.lighter(e, current)) {
+            if (lightest.compareAndSet(tree, current, e))
+                return;
+            current = lightest.get(tree);
+        }
+    }
+
+    private static int root(int[] parent, int v) {
+        while (parent[v] != v)
+            v = parent[v];
+        return v;
+    }
+
+    /**
+     * Joins the trees of two vertices, the smaller under the bigger one, halving the paths on the way.
+     *
+     * @return false if they were already in the same tree.
+     */
+    private static boolean union(int[] parent, int[] size, int a, int b) {
+        while (parent[a] != a)
+            a = parent[a] = parent[parent[a]];
+        while (parent[b] != b)
+            b = parent[b] = parent[parent[b]];
+        if (a == b)
+            return false;
+        if (size[a] < size[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        parent[b] = a;
+        size[a] += size[b];
+        return true;
+    }
+
+    public List<Edge<?, ?>> getEdges() {
+        return edges;
+    }
+
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Number of trees of the forest, which is the number of connected components of the graph.
+     *
+     * @return number of trees.
+     */
+    public int getNumTrees() {
+        return trees;
+    }
+}
@@ -0,0 +1,116 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fixed set of read write locks shared by many objects, each object using the lock of its hash. It
+ * bounds the memory used by locks while operations on objects with different stripes don't block
+ * each other. When two stripes must be held at the same time they are always taken in stripe order,
+ * so two threads locking the same pair can't deadlock.
+ * <p>
+ * A disabled instance hands out locks that do nothing, so single threaded code pays no locking cost.
+ */
+class StripedLocks {
+
+    private static final Lock NONE = new Lock() {
+        @Override
+        public void lock() {
+        }
+
+        @Override
+        public void lockInterruptibly() {
+        }
+
+        @Override
+        public boolean tryLock() {
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) {
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    /**
+     * Constructor that creates the stripes.
+     *
+     * @param count   minimum number of stripes, rounded up to a power of two.
+     * @param enabled false to create locks that do nothing.
+     */
+    StripedLocks(int count, boolean enabled) {
+        if (enabled) {
+            int size = Integer.highestOneBit(Math.max(1, count - 1)) << 1;
+            stripes = new ReentrantReadWriteLock[size];
+            for (int i = 0; i < size; i++)
+                stripes[i] = new ReentrantReadWriteLock();
+        } else {
+            stripes = null;
+        }
+    }
+
+    boolean isEnabled() {
+        return stripes != null;
+    }
+
+    private int stripe(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        hash ^= hash >>> 16;
+        return hash & (stripes.length - 1);
+    }
+
+    Lock readLock(int hash) {
+        return null == stripes ? NONE : stripes[stripe(hash)].readLock();
+    }
+
+    Lock writeLock(int hash) {
+        return null == stripes ? NONE : stripes[stripe(hash)].writeLock();
+    }
+
+    /**
+     * Takes the write locks of two objects in stripe order, or a single one if both share the stripe.
+     *
+     * @param first  hash of the first object.
+     * @param second hash of the second object.
+     */
+    void lockBoth(int first, int second) {
+        if (null == stripes)
+            return;
+        int a = stripe(first);
+        int b = stripe(second);
+        stripes[Math.min(a, b)].writeLock().lock();
+        if (a != b)
+            stripes[Math.max(a, b)].writeLock().lock();
+    }
+
+    /**
+     * Releases the write locks taken by lockBoth.
+     *
+     * @param first  hash of the first object.
+     * @param second hash of the second object.
+     */
+    void unlockBoth(int first, int second) {
+        if (null == stripes)
+            return;
+        int a = stripe(first);
+        int b = stripe(second);
+        if (a != b)
+            stripes[Math.max(a, b)].writeLock().unlock();
+        stripes[Math.min(a, b)].writeLock().unlock();
+    }
+}
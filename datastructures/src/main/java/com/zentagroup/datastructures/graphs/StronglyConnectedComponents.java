@@ -0,0 +1,211 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.Arrays;
+
+/**
+ * Strongly connected components of a Graph or of the egress edges of a StructuredGraph, found with the
+ * space efficient variant of Tarjan's algorithm by Pearce. The depth first search keeps its own stack in
+ * int arrays instead of recurring, so it works on graphs of any depth, and besides the edges it only
+ * needs a few int arrays of one entry per vertex.
+ * <p>
+ * Components are numbered in topological order: every edge between two components goes from a lower
+ * number to a higher one. Vertices of a Graph are identified by their number and vertices of a
+ * StructuredGraph by their id. Ids of deleted vertices belong to no component.
+ */
+public class StronglyConnectedComponents {
+
+    private final IntAdjacency adjacency;
+    private final int[] component;
+    private final int[] sizes;
+
+    private StronglyConnectedComponents(IntAdjacency adjacency) {
+        this.adjacency = adjacency;
+        int n = adjacency.size();
+        this.component = new int[n];
+        int count = search(adjacency, component);
+        this.sizes = new int[count];
+        for (int v = 0; v < n; v++) {
+            if (component[v] >= 0)
+                sizes[component[v]]++;
+        }
+    }
+
+    /**
+     * Finds the components of a Graph.
+     *
+     * @param graph graph.
+     * @return components.
+     */
+    public static StronglyConnectedComponents of(Graph graph) {
+        return new StronglyConnectedComponents(IntAdjacency.of(graph));
+    }
+
+    /**
+     * Finds the components of a StructuredGraph following the egress edges.
+     *
+     * @param graph graph.
+     * @return components.
+     */
+    public static StronglyConnectedComponents of(StructuredGraph graph) {
+        return new StronglyConnectedComponents(IntAdjacency.of(graph));
+    }
+
+    /**
+     * Pearce's algorithm. rindex holds the visit index of the vertices in the search, lowered to the
+     * smallest index reachable as the edges are finished. When a vertex is finished without being lowered
+     * it's the root of a component, made of it and the vertices pushed after it in the component stack,
+     * which get the component counter as rindex. The counter goes down from n and indexes are reused, so
+     * vertices in a finished component always have a greater rindex than the ones still in the search, and
+     * 0 is left to mark the vertices not visited yet.
+     *
+     * @param adjacency edges.
+     * @param component filled with the component of every vertex, -1 for vertices that don't exist.
+     * @return number of components.
+     */
+    private static int search(IntAdjacency adjacency, int[] component) {
+        int n = adjacency.size();
+        int[] rindex = component;
+        Arrays.fill(rindex, 0);
+        boolean[] root = new boolean[n];
+        int[] next = new int[n];
+        int[] calls = new int[n];
+        int[] stack = new int[n];
+        int index = 1;
+        int c = n;
+        int top = -1;
+        for (int s = 0; s < n; s++) {
+            if (rindex[s] != 0 || !adjacency.exists(s))
+                continue;
+            int depth = 0;
+            calls[0] = s;
+            root[s] = true;
+            rindex[s] = index++;
+            next[s] = adjacency.offsets[s];
+            while (depth >= 0) {
+                int v = calls[depth];
+                if (next[v] < adjacency.offsets[v + 1]) {
+                    int w = adjacency.targets[next[v]++];
+                    if (rindex[w] == 0) {
+                        root[w] = true;
+                        rindex[w] = index++;
+                        next[w] = adjacency.offsets[w];
+                        calls[++depth] = w;
+                    } else if (rindex[w] < rindex[v]) {
+                        rindex[v] = rindex[w];
+                        root[v] = false;
+                    }
+                    continue;
+                }
+                depth--;
+                if (root[v]) {
+                    index--;
+                    while (top >= 0 && rindex[v] <= rindex[stack[top]]) {
+                        rindex[stack[top--]] = c;
+                        index--;
+                    }
+                    rindex[v] = c--;
+                } else {
+                    stack[++top] = v;
+                }
+                if (depth >= 0) {
+                    int parent = calls[depth];
+                    if (rindex[v] < rindex[parent]) {
+                        rindex[parent] = rindex[v];
+                        root[parent] = false;
+                    }
+                }
+            }
+        }
+        int count = n - c;
+        for (int v = 0; v < n; v++) {
+            // Components finished first have the highest counters and are sinks, so the counter minus the
+            // last one given is already a topological order.
+            component[v] = rindex[v] == 0 ? -1 : rindex[v] - c - 1;
+        }
+        return count;
+    }
+
+    public int getCount() {
+        return sizes.length;
+    }
+
+    /**
+     * Component of a vertex.
+     *
+     * @param v vertex number of a Graph or vertex id of a StructuredGraph.
+     * @return component, or -1 if the vertex doesn't exist.
+     */
+    public int componentOf(int v) {
+        return v < 0 || v >= component.length ? -1 : component[v];
+    }
+
+    public int componentOf(Vertex v) {
+        return componentOf(v.getId());
+    }
+
+    /**
+     * Number of vertices of a component.
+     *
+     * @param c component.
+     * @return size of the component.
+     */
+    public int sizeOf(int c) {
+        return sizes[c];
+    }
+
+    /**
+     * Component of every vertex, indexed by vertex number or id.
+     *
+     * @return copy of the components, -1 for vertices that don't exist.
+     */
+    public int[] getComponents() {
+        return component.clone();
+    }
+
+    /**
+     * Number of vertices of every component, indexed by component.
+     *
+     * @return copy of the sizes.
+     */
+    public int[] getSizes() {
+        return sizes.clone();
+    }
+
+    /**
+     * Condensation of the graph: a directed acyclic Graph with one vertex per component and one edge
+     * between two components if any of their vertices are joined by an edge.
+     *
+     * @return graph whose vertex numbers are the components.
+     */
+    public Graph condensation() {
+        int n = component.length;
+        int count = sizes.length;
+        int[] start = new int[count + 1];
+        for (int c = 0; c < count; c++)
+            start[c + 1] = start[c] + sizes[c];
+        int[] members = new int[start[count]];
+        int[] fill = Arrays.copyOf(start, count);
+        for (int v = 0; v < n; v++) {
+            if (component[v] >= 0)
+                members[fill[component[v]]++] = v;
+        }
+        Graph dag = new Graph(count);
+        int[] added = new int[count];
+        Arrays.fill(added, -1);
+        for (int c = 0; c < count; c++) {
+            for (int m = start[c]; m < start[c + 1]; m++) {
+                int v = members[m];
+                for (int i = adjacency.offsets[v]; i < adjacency.offsets[v + 1]; i++) {
+                    int d = component[adjacency.targets[i]];
+                    if (d != c && added[d] != c) {
+                        added[d] = c;
+                        dag.addEdge(c, d);
+                    }
+                }
+            }
+        }
+        return dag;
+    }
+}
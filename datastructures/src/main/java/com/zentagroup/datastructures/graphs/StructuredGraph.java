@@ -1,56 +1,478 @@
 package com.zentagroup.datastructures.graphs;
 
-import com.zentagroup.datastructures.avltree.AVLTreeSet;
-
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Graph of typed vertices with data, related by weighted edges.
+ * <p>
+ * A graph created in concurrent mode can be used by many threads at the same time. Vertices are kept in
+ * concurrent collections and the edge indexes of each vertex are guarded by a striped read write lock,
+ * chosen by the vertex id. Operations on an edge take the locks of both vertices in stripe order, and the
+ * operations that look up a vertex before creating it take a striped lock of its type, so ingest and query
+ * threads only block each other when they touch the same stripes. In concurrent mode the edge indexes
+ * returned by Vertex.getEgress and getIngress must not be read while other threads modify the graph; the
+ * methods of the graph should be used instead.
+ * <p>
+ * Every write gets a version, kept in the vertices and edges it creates or deletes. A Snapshot opened with
+ * openSnapshot reads the graph as it was at a version, without blocking writers: deleted vertices and edges
+ * are kept aside while an open snapshot can still see them and are collected in small batches by later
+ * writes once no snapshot needs them.
+ */
 public class StructuredGraph {
 
-    private HashMap<String, HashSet<Vertex>> vertices;
-    private int numVertices;
-    private int numEdges;
+    private static final int TAG_STRIPES = 64;
+    private static final int VERTEX_STRIPES = 1024;
+    private static final int GC_BATCH = 64;
+    static final long LIVE = Long.MAX_VALUE;
+
+    private final CodeTable<Set<Vertex>> vertices;
+    private final VertexTable vertexById;
+    private final LongAdder numVertices;
+    private final LongAdder numEdges;
+    private final StripedLocks tagLocks;
+    private final StripedLocks vertexLocks;
+    private final VersionClock versions = new VersionClock();
+    private final Set<Snapshot> openSnapshots = ConcurrentHashMap.newKeySet();
+    private final CodeTable<PropertyTable> properties = new CodeTable<>();
+    private final Queue<int[]> slotTables = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+    private final ConcurrentLinkedQueue<Vertex> retiredVertexQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Edge<?, ?>> retiredEdgeQueue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock collector = new ReentrantLock();
+    private final List<StructuredGraphListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile PathCache pathCache;
+    WriteAheadLog log;
+    long logEpoch;
 
     /**
-     * Constructor that instantiates an empty Graph.
+     * Constructor that instantiates an empty Graph to be used by a single thread.
      */
     public StructuredGraph() {
-        vertices = new HashMap();
-        numVertices = 0;
-        numEdges = 0;
+        this(false);
+    }
+
+    /**
+     * Constructor that instantiates an empty Graph.
+     *
+     * @param concurrent true to allow several threads to read and modify the graph at the same time.
+     */
+    public StructuredGraph(boolean concurrent) {
+        vertices = new CodeTable<>();
+        vertexById = new VertexTable();
+        numVertices = new LongAdder();
+        numEdges = new LongAdder();
+        tagLocks = new StripedLocks(TAG_STRIPES, concurrent);
+        vertexLocks = new StripedLocks(VERTEX_STRIPES, concurrent);
+    }
+
+    public boolean isConcurrent() {
+        return vertexLocks.isEnabled();
+    }
+
+    /**
+     * Registers a listener that is notified of every vertex and edge added to or deleted from the graph.
+     *
+     * @param listener listener.
+     */
+    public void addListener(StructuredGraphListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StructuredGraphListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Enables a cache of the paths found by findShortestPath, or disables it.
+     *
+     * @param capacity maximum number of paths kept, 0 to disable the cache.
+     */
+    public void setPathCache(int capacity) {
+        PathCache old = pathCache;
+        if (null != old)
+            removeListener(old);
+        PathCache cache = capacity > 0 ? new PathCache(capacity) : null;
+        if (null != cache)
+            addListener(cache);
+        pathCache = cache;
+    }
+
+    /**
+     * Cache of the paths found by findShortestPath, to read its hit and miss counters.
+     *
+     * @return the cache, or null if it isn't enabled.
+     */
+    public PathCache getPathCache() {
+        return pathCache;
     }
 
     public int getNumVertices() {
-        return numVertices;
+        return numVertices.intValue();
     }
 
     public int getNumEdges() {
-        return numEdges;
+        return numEdges.intValue();
+    }
+
+    /**
+     * Finds a Vertex by the id it was given when it was added to the graph.
+     *
+     * @param id vertex id.
+     * @return Vertex or null if there's no vertex with that id or it was deleted.
+     */
+    public Vertex findVertexById(int id) {
+        return vertexById.get(id);
+    }
+
+    /**
+     * Upper bound of the vertex ids given so far. Ids are dense and never reused, so arrays of this
+     * size can hold per vertex state indexed by id.
+     *
+     * @return greatest vertex id plus one.
+     */
+    int vertexIdBound() {
+        return vertexById.bound();
+    }
+
+    /**
+     * Collects every vertex of the graph regardless of its type, in id order.
+     *
+     * @return list with all the vertices.
+     */
+    List<Vertex> allVertices() {
+        int bound = vertexById.bound();
+        List<Vertex> all = new ArrayList<>(getNumVertices());
+        for (int id = 0; id < bound; id++) {
+            Vertex v = vertexById.get(id);
+            if (null != v)
+                all.add(v);
+        }
+        return all;
+    }
+
+    /**
+     * Vertices of a type, or every vertex if the type is null.
+     *
+     * @param tag type of the vertices.
+     * @return live set of the vertices of the type, or a list with all of them.
+     */
+    Collection<Vertex> verticesOf(String tag) {
+        if (null == tag)
+            return allVertices();
+        Set<Vertex> ofTag = vertices.get(Dictionary.code(tag));
+        return null == ofTag ? Collections.<Vertex>emptySet() : ofTag;
+    }
+
+    /**
+     * Performs an action on the current egress or ingress edges of a vertex to vertices of a type with a
+     * relationship, holding the read lock of the vertex. The action must not lock other vertices.
+     *
+     * @param v            vertex.
+     * @param egress       true for the egress edges, false for the ingress ones.
+     * @param tag          type of the vertices at the other end, or null for every type.
+     * @param relationship relationship of the edges, or null for every relationship.
+     * @param action       action performed on each edge.
+     */
+    void forEachEdge(Vertex v, boolean egress, String tag, Comparable<?> relationship, Consumer<? super Edge<?, ?>> action) {
+        forEachEdge(v, egress ? v.egress : v.ingress, tag, relationship, LIVE, action);
+    }
+
+    /**
+     * Code of a type of vertices for the searches of edges.
+     *
+     * @param tag type, or null for every type.
+     * @return code of the type, Dictionary.NONE for every type, or null if no vertex has the type.
+     */
+    private static Integer tagCode(String tag) {
+        int code = Dictionary.code(tag);
+        return null != tag && code == Dictionary.NONE ? null : code;
+    }
+
+    /**
+     * Egress edges of a vertex. In concurrent mode they are copied under the read lock of the vertex,
+     * so they can be iterated while other threads modify the graph.
+     *
+     * @param v vertex.
+     * @return egress edges.
+     */
+    Iterable<Edge<?, ?>> egressOf(Vertex v) {
+        return edgesOf(v, v.egress, LIVE);
+    }
+
+    /**
+     * Ingress edges of a vertex, copied like in egressOf.
+     *
+     * @param v vertex.
+     * @return ingress edges.
+     */
+    Iterable<Edge<?, ?>> ingressOf(Vertex v) {
+        return edgesOf(v, v.ingress, LIVE);
+    }
+
+    private Iterable<Edge<?, ?>> edgesOf(Vertex v, EdgeIndex index, long at) {
+        if (at == LIVE && !vertexLocks.isEnabled())
+            return index;
+        List<Edge<?, ?>> edges = new ArrayList<>(index.size());
+        forEachEdge(v, index, Dictionary.NONE, null, at, edges::add);
+        return edges;
+    }
+
+    /**
+     * Performs an action on the edges of an index of a vertex holding the read lock of the vertex.
+     * The action must not lock other vertices. When reading at a version, edges created later are skipped
+     * and the deleted edges the version can still see are included.
+     *
+     * @param v            owner of the index.
+     * @param index        egress or ingress index of the vertex.
+     * @param tag          type of the vertices at the other end, or null for every type.
+     * @param relationship relationship of the edges, or null for every relationship.
+     * @param at           version to read, or LIVE for the current edges.
+     * @param action       action performed on each edge.
+     */
+    private void forEachEdge(Vertex v, EdgeIndex index, String tag, Comparable<?> relationship, long at,
+                             Consumer<? super Edge<?, ?>> action) {
+        Integer code = tagCode(tag);
+        if (null != code)
+            forEachEdge(v, index, (int) code, relationship, at, action);
+    }
+
+    private void forEachEdge(Vertex v, EdgeIndex index, int tag, Comparable<?> relationship, long at,
+                             Consumer<? super Edge<?, ?>> action) {
+        Lock lock = vertexLocks.readLock(v.id);
+        lock.lock();
+        try {
+            if (at == LIVE) {
+                index.forEach(tag, relationship, action);
+                return;
+            }
+            index.forEach(tag, relationship, edge -> {
+                if (edge.created <= at)
+                    action.accept(edge);
+            });
+            if (null != v.retired) {
+                for (Edge<?, ?> edge : v.retired) {
+                    if (edge.created <= at && edge.removed > at
+                            && (index == v.egress ? edge.origin == v : edge.vertex == v)
+                            && (tag == Dictionary.NONE || tag == edge.opposite(v).tag)
+                            && (null == relationship || relationship.equals(edge.relationship)))
+                        action.accept(edge);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens a snapshot that reads the graph as it is now while other threads keep modifying it.
+     * The snapshot must be closed once it's not needed, so the vertices and edges deleted meanwhile
+     * can be collected.
+     *
+     * @return open snapshot.
+     */
+    public Snapshot openSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        openSnapshots.add(snapshot);
+        snapshot.version = versions.stable();
+        return snapshot;
+    }
+
+    /**
+     * Oldest version an open snapshot may read. Deleted vertices and edges with a previous or equal
+     * deletion version can't be seen by any snapshot, current or future.
+     *
+     * @return oldest visible version, or -1 if a snapshot is being opened.
+     */
+    private long oldestVisibleVersion() {
+        long oldest = versions.stable();
+        for (Snapshot snapshot : openSnapshots) {
+            if (snapshot.version < 0)
+                return -1;
+            oldest = Math.min(oldest, snapshot.version);
+        }
+        return oldest;
+    }
+
+    /**
+     * Forgets a batch of the deleted vertices and edges no snapshot can see anymore. It's called after
+     * writes and when a snapshot is closed, without holding any lock, and does nothing if another thread
+     * is already collecting.
+     */
+    private void collectGarbage() {
+        if (retiredEdgeQueue.isEmpty() && retiredVertexQueue.isEmpty() || !collector.tryLock())
+            return;
+        try {
+            long oldest = oldestVisibleVersion();
+            for (int i = 0; i < GC_BATCH; i++) {
+                Edge<?, ?> edge = retiredEdgeQueue.peek();
+                if (null == edge || edge.removed > oldest)
+                    break;
+                retiredEdgeQueue.poll();
+                vertexLocks.lockBoth(edge.origin.id, edge.vertex.id);
+                try {
+                    edge.origin.forget(edge);
+                    edge.vertex.forget(edge);
+                } finally {
+                    vertexLocks.unlockBoth(edge.origin.id, edge.vertex.id);
+                }
+            }
+            for (int i = 0; i < GC_BATCH; i++) {
+                Vertex v = retiredVertexQueue.peek();
+                if (null == v || v.removed > oldest)
+                    break;
+                retiredVertexQueue.poll();
+                v.table.free(v);
+                Lock lock = vertexLocks.writeLock(v.id);
+                lock.lock();
+                try {
+                    v.retired = null;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            collector.unlock();
+        }
+    }
+
+    /**
+     * Saves the graph to a compact binary file that can be read again with the load method.
+     * Attribute values keep their type when they are strings, numbers or booleans; any other value
+     * must be serializable.
+     *
+     * @param file destination file.
+     * @throws IOException if the file can't be written or a value isn't serializable.
+     */
+    public void save(Path file) throws IOException {
+        StructuredGraphSnapshot.save(this, file, logEpoch);
+    }
+
+    /**
+     * Saves a snapshot of the graph and empties its write-ahead log, whose records are now part of the
+     * snapshot. The snapshot is written to a temporary file first and then moved over the previous one,
+     * so there's always a complete snapshot on disk. In concurrent mode other threads must not modify the
+     * graph during the checkpoint, or their changes may be missing from both the snapshot and the log.
+     *
+     * @param snapshot snapshot file.
+     * @throws IOException if the snapshot or the log can't be written.
+     */
+    public void checkpoint(Path snapshot) throws IOException {
+        long epoch = (null == log ? logEpoch : log.getEpoch()) + 1;
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        StructuredGraphSnapshot.save(this, temporary, epoch);
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logEpoch = epoch;
+        if (null != log)
+            log.reset(epoch);
+    }
+
+    /**
+     * Loads a graph saved with the save method into a graph to be used by a single thread. The file is
+     * memory mapped and decoded in parallel. Vertices get new dense ids grouped by type.
+     *
+     * @param file file written by save.
+     * @return loaded graph.
+     * @throws IOException if the file can't be read or isn't a graph snapshot.
+     */
+    public static StructuredGraph load(Path file) throws IOException {
+        return load(file, false);
+    }
+
+    /**
+     * Loads a graph saved with the save method, like load(file), choosing whether the graph is concurrent.
+     *
+     * @param file       file written by save.
+     * @param concurrent true to allow several threads to read and modify the loaded graph at the same time.
+     * @return loaded graph.
+     * @throws IOException if the file can't be read or isn't a graph snapshot.
+     */
+    public static StructuredGraph load(Path file, boolean concurrent) throws IOException {
+        return StructuredGraphSnapshot.load(file, concurrent);
     }
 
     /**
      * Adds a Vertex to the graph based on a Hashmap with the data and its tag which
      * defines the type of the data.
      * If the type isn't already in the graph's hashmap it creates a new Key set with it.
+     * The vertex gets the next id, which is used to index it in traversals. The vertex is written to the
+     * write-ahead log and inserted holding the lock of its type, so the log has the vertices of a type in
+     * the order they were created; the wait for the record to be forced comes after releasing the lock.
      *
      * @param data Hashmap with fields as keys and data as value.
      * @param tag  type of data.
      * @return Vertex created. If there's an exception it returns null.
      */
     public Vertex addVertex(HashMap<String, Object> data, String tag) {
+        WriteAheadLog wal = log;
+        long logged = 0;
+        Lock tagLock = tagLocks.writeLock(Objects.hashCode(tag));
+        tagLock.lock();
+        try {
+            if (null != wal)
+                logged = wal.logAddVertex(data, tag);
+            return insertVertex(data, tag);
+        } finally {
+            tagLock.unlock();
+            if (0 != logged)
+                wal.awaitDurable(logged);
+        }
+    }
+
+    private Vertex insertVertex(HashMap<String, Object> data, String tag) {
         Vertex newVertex = new Vertex(data, tag);
+        long version = versions.begin();
         try {
-            if (!vertices.containsKey(newVertex.tag)) {
-                vertices.put(newVertex.tag, new HashSet<Vertex>());
-            }
-            vertices.get(newVertex.tag).add(newVertex);
-            numVertices++;
+            newVertex.created = version;
+            newVertex.id = vertexById.add(newVertex);
+            properties.computeIfAbsent(newVertex.tag, t -> new PropertyTable(tagLocks.isEnabled())).add(newVertex);
+            vertices.computeIfAbsent(newVertex.tag, t -> ConcurrentHashMap.<Vertex>newKeySet()).add(newVertex);
+            numVertices.increment();
         } catch (Exception ex) {
             System.out.println(ex.getMessage());
+            discard(newVertex);
             return null;
+        } finally {
+            versions.end(version);
         }
+        for (StructuredGraphListener listener : listeners)
+            listener.vertexAdded(newVertex);
         return newVertex;
     }
 
+    /**
+     * Undoes the steps of an insertion that failed, so no index keeps a vertex that isn't in the graph.
+     *
+     * @param v vertex whose insertion failed.
+     */
+    private void discard(Vertex v) {
+        if (v.id >= 0)
+            vertexById.remove(v.id);
+        Set<Vertex> ofTag = vertices.get(v.tag);
+        if (null != ofTag)
+            ofTag.remove(v);
+        PropertyTable table = v.table;
+        if (null != table)
+            table.free(v);
+    }
+
     /**
      * Adds an Edge to the affected vertex based on origin and destination data and types, a relationship,
      * and a boolean indicating whether the relationship is bidirectional or not. It automatically sets the
@@ -73,7 +495,8 @@ public class StructuredGraph {
     /**
      * Adds an Edge to the affected vertex based on origin and destination data and types, a relationship,
      * the weight or numeric value of it, and a boolean indicating whether the relationship is bidirectional
-     * or not. It uses the Vertex addRelationship method.
+     * or not. It uses the Vertex addRelationship method. Missing vertices are created holding the lock
+     * of their type, so threads adding edges to the same new vertex don't create it twice.
      *
      * @param origin          Hashmap with fields as keys and data as value of the origin.
      * @param tagOrigin       data type of the origin.
@@ -87,113 +510,306 @@ public class StructuredGraph {
     public <T extends Comparable> void addEdge(HashMap<String, Object> origin, String tagOrigin,
                                                HashMap<String, Object> destination, String tagDestination,
                                                T relationship, boolean isBidirectional, Double weight) {
-        Vertex d = findVertex(destination, tagDestination);
-        if (null == d)
-            d = addVertex(destination, tagDestination);
-        Vertex o = findVertex(origin, tagOrigin);
-        if (null == o)
-            o = addVertex(origin, tagOrigin);
-        o.addRelationship(d, relationship, isBidirectional, weight);
+        WriteAheadLog wal = log;
+        long logged = 0;
+        while (true) {
+            Vertex d = findVertex(destination, tagDestination);
+            Vertex o = findVertex(origin, tagOrigin);
+            if (null == d || null == o) {
+                int oHash = Objects.hashCode(tagOrigin);
+                int dHash = Objects.hashCode(tagDestination);
+                tagLocks.lockBoth(oHash, dHash);
+                try {
+                    d = findVertex(destination, tagDestination);
+                    if (null == d)
+                        d = insertVertex(destination, tagDestination);
+                    o = findVertex(origin, tagOrigin);
+                    if (null == o)
+                        o = insertVertex(origin, tagOrigin);
+                } finally {
+                    tagLocks.unlockBoth(oHash, dHash);
+                }
+            }
+            vertexLocks.lockBoth(o.id, d.id);
+            try {
+                if (o.deleted || d.deleted)
+                    continue;
+                if (null != wal)
+                    logged = wal.logAddEdge(origin, tagOrigin, destination, tagDestination, relationship,
+                            isBidirectional, weight);
+                addEdges(o, d, relationship, isBidirectional, weight);
+                break;
+            } finally {
+                vertexLocks.unlockBoth(o.id, d.id);
+            }
+        }
+        if (0 != logged)
+            wal.awaitDurable(logged);
+        collectGarbage();
+    }
+
+    /**
+     * Adds the edges of a relationship between two vertices with a single version, so a snapshot sees
+     * both directions of a bidirectional relationship or none.
+     *
+     * @param o               origin vertex.
+     * @param d               destination vertex.
+     * @param relationship    relationship of the edges.
+     * @param isBidirectional whether the edge from the destination to the origin is also added.
+     * @param weight          weight of the edges.
+     * @return false if one of the vertices was deleted.
+     */
+    private boolean addEdges(Vertex o, Vertex d, Comparable<?> relationship, boolean isBidirectional, Double weight) {
+        long version = versions.begin();
+        vertexLocks.lockBoth(o.id, d.id);
+        try {
+            if (o.deleted || d.deleted)
+                return false;
+            o.addEgressRelationship(o, d, relationship, weight, version);
+            if (isBidirectional)
+                o.addEgressRelationship(d, o, relationship, weight, version);
+            return true;
+        } finally {
+            vertexLocks.unlockBoth(o.id, d.id);
+            versions.end(version);
+        }
+    }
+
+    /**
+     * Adds the edges of many relationships leaving the same vertex, as the loader does with a batch of
+     * edges grouped by origin. The edges share a single version, so the batch begins and ends one write
+     * instead of one per edge, and the garbage is collected once at the end. Each edge still takes the
+     * locks of its two vertices, as in addEdges.
+     *
+     * @param o             origin vertex.
+     * @param destinations  destination of each relationship.
+     * @param relationships relationship of each.
+     * @param weights       weight of each.
+     * @param bidirectional whether each relationship goes both ways.
+     * @param from          index of the first relationship to add.
+     * @param to            index after the last relationship to add.
+     * @return number of relationships added, leaving out the ones with a deleted vertex.
+     */
+    int addEdgesFrom(Vertex o, Vertex[] destinations, Comparable<?>[] relationships, double[] weights,
+                     boolean[] bidirectional, int from, int to) {
+        int added = 0;
+        long version = versions.begin();
+        try {
+            for (int i = from; i < to; i++) {
+                Vertex d = destinations[i];
+                vertexLocks.lockBoth(o.id, d.id);
+                try {
+                    if (o.deleted || d.deleted)
+                        continue;
+                    o.addEgressRelationship(o, d, relationships[i], weights[i], version);
+                    if (bidirectional[i])
+                        o.addEgressRelationship(d, o, relationships[i], weights[i], version);
+                    added++;
+                } finally {
+                    vertexLocks.unlockBoth(o.id, d.id);
+                }
+            }
+        } finally {
+            versions.end(version);
+        }
+        collectGarbage();
+        return added;
     }
 
     /**
      * Deletes a Vertex from the graph based on its data and type. It reduces the total number of
-     * vertices by one. It deletes also all the edges containing the vertex using the deleteEdge method.
+     * vertices by one. It deletes also all the edges containing the vertex, walking its egress and ingress
+     * indexes once: each edge is removed from the index of the vertex at the other end, and the indexes of
+     * the deleted vertex are emptied at once at the end, so the cost is O(degree * log degree).
+     * The vertex is marked as deleted before, so no other thread can add edges to it meanwhile. The vertex
+     * and its edges are deleted with a single version and kept aside for the open snapshots.
      *
      * @param vertexData Hashmap with fields as keys and data as value.
      * @param vertexTag  type of data.
      * @return false if the vertex doesn't exist. If it exists and is deleted it returns true.
      */
     public boolean deleteVertex(HashMap<String, Object> vertexData, String vertexTag) {
-        Vertex v = findVertex(vertexData, vertexTag);
-        if (null != v) {
-            Set<Vertex> egressIngressVertex = findEgressAndIngress(vertexData, vertexTag);
+        WriteAheadLog wal = log;
+        long logged = 0;
+        Lock tagLock = tagLocks.writeLock(Objects.hashCode(vertexTag));
+        tagLock.lock();
+        long version = versions.begin();
+        try {
+            Vertex v = findVertex(vertexData, vertexTag);
+            if (null == v)
+                return false;
+            Set<Vertex> egressIngressVertex = new HashSet<>();
+            Lock lock = vertexLocks.writeLock(v.id);
+            lock.lock();
+            try {
+                if (v.deleted)
+                    return false;
+                if (null != wal)
+                    logged = wal.logDeleteVertex(vertexData, vertexTag);
+                v.deleted = true;
+                v.removed = version;
+                egressIngressVertex.addAll(v.egress.neighbors());
+                egressIngressVertex.addAll(v.ingress.neighbors());
+            } finally {
+                lock.unlock();
+            }
             for (Vertex vertex : egressIngressVertex) {
-                deleteEdge(v.data, v.tag, vertex.data, vertex.tag);
+                vertexLocks.lockBoth(v.id, vertex.id);
+                try {
+                    detachEdges(v, vertex, version);
+                } finally {
+                    vertexLocks.unlockBoth(v.id, vertex.id);
+                }
+            }
+            lock.lock();
+            try {
+                v.egress.clear();
+                v.ingress.clear();
+            } finally {
+                lock.unlock();
             }
-            vertices.get(vertexTag).remove(v);
-            numVertices--;
+            retiredVertexQueue.add(v);
+            vertices.get(v.tag).remove(v);
+            vertexById.remove(v.id);
+            numVertices.decrement();
+            for (StructuredGraphListener listener : listeners)
+                listener.vertexDeleted(v);
             return true;
+        } finally {
+            tagLock.unlock();
+            versions.end(version);
+            if (0 != logged)
+                wal.awaitDurable(logged);
+            collectGarbage();
         }
-        return false;
     }
 
     /**
      * Deletes all the Edges representing relationships between two vertex based on their data and type.
-     * It uses the deleteEdge private method twice with the egress and twice with the ingress with one of
-     * the vertices as origin each time.
+     * It uses the deleteEdges private method once with each of the vertices as origin.
      *
      * @param origin      Hashmap with fields as keys and data as value of the origin.
      * @param oTag        data type of the origin.
      * @param destination Hashmap with fields as keys and data as value of the destination.
      * @param dTag        data type of the destination.
-     * @return true if both vertices exist and edges are deleted. Otherwise false.
+     * @return true if both vertices exist and edges are deleted. Otherwise false, also when one of the
+     * vertices is deleted meanwhile, as the deletion of the vertex deletes its edges.
      */
     public boolean deleteEdge(HashMap<String, Object> origin, String oTag, HashMap<String, Object> destination, String dTag) {
         Vertex o = findVertex(origin, oTag);
         Vertex d = findVertex(destination, dTag);
-        if (null != o || null != d) {
-            deleteEdge(d, dTag, o.getEgress());
-            deleteEdge(o, oTag, d.getIngress());
-            deleteEdge(d, dTag, o.getIngress());
-            deleteEdge(o, oTag, d.getEgress());
+        if (null != o && null != d) {
+            WriteAheadLog wal = log;
+            long logged = 0;
+            long version = versions.begin();
+            vertexLocks.lockBoth(o.id, d.id);
+            try {
+                if (o.deleted || d.deleted)
+                    return false;
+                if (null != wal)
+                    logged = wal.logDeleteEdge(origin, oTag, destination, dTag);
+                deleteEdges(o, d, version);
+                deleteEdges(d, o, version);
+            } finally {
+                vertexLocks.unlockBoth(o.id, d.id);
+                versions.end(version);
+            }
+            if (0 != logged)
+                wal.awaitDurable(logged);
+            collectGarbage();
             return true;
         }
         return false;
     }
 
     /**
-     * Implements the deletion of edges based on an egress or ingress origin map and a destination vertex.
-     * It deletes the edges with the destination vertex from the map of the origin.
-     * If after the deletion the value of the map (AVLTreeSet) is empty (no other edges
-     * of the type exist) it deletes the key - value pair from the map.
+     * Implements the deletion of the edges going from an origin vertex to a destination vertex.
+     * The edges are found through the egress index of the origin by the destination vertex and
+     * removed from it and from the ingress index of the destination. The locks of both vertices must
+     * be held. The edges are kept aside in both vertices until no snapshot can see them.
      *
-     * @param d    destination Vertex
-     * @param dTag data type of the destination
-     * @param type egress or ingress HashMap
+     * @param o       origin Vertex
+     * @param d       destination Vertex
+     * @param version version of the deletion.
      * @return true if the edges were deleted. Otherwise false.
      */
-    private boolean deleteEdge(Vertex d, String dTag, Map<String, AVLTreeSet<Edge>> type) {
-        for (Map.Entry<String, AVLTreeSet<Edge>> e : type.entrySet()) {
-            if (e.getKey().equals(dTag)) {
-                for (Edge edge : e.getValue()) {
-                    if (edge.vertex.compareTo(d) == 0) {
-                        e.getValue().remove(edge);
-                        numEdges--;
-                    }
-                }
-                if (e.getValue().isEmpty())
-                    type.keySet().removeIf(key -> key == dTag);
-            }
+    private boolean deleteEdges(Vertex o, Vertex d, long version) {
+        List<Edge<?, ?>> edges = new ArrayList<>(o.egress.edgesTo(d));
+        for (Edge<?, ?> edge : edges) {
+            o.egress.remove(edge);
+            d.ingress.remove(edge);
+            edge.removed = version;
+            o.retire(edge);
+            if (d != o)
+                d.retire(edge);
+            retiredEdgeQueue.add(edge);
+            numEdges.add(-2);
+            for (StructuredGraphListener listener : listeners)
+                listener.edgeDeleted(edge);
+        }
+        return !edges.isEmpty();
+    }
+
+    /**
+     * Deletes the edges between a vertex being deleted and one of its neighbors, in both directions.
+     * The edges are only removed from the indexes of the neighbor, as the indexes of the deleted vertex
+     * are emptied after all its neighbors. The locks of both vertices must be held.
+     *
+     * @param v       vertex being deleted.
+     * @param other   neighbor.
+     * @param version version of the deletion.
+     */
+    private void detachEdges(Vertex v, Vertex other, long version) {
+        for (Edge<?, ?> edge : v.egress.edgesTo(other))
+            detachEdge(v, other, other.ingress, edge, version);
+        if (other == v)
+            return;
+        for (Edge<?, ?> edge : v.ingress.edgesTo(other))
+            detachEdge(v, other, other.egress, edge, version);
+    }
+
+    private void detachEdge(Vertex v, Vertex other, EdgeIndex mirror, Edge<?, ?> edge, long version) {
+        if (other != v) {
+            mirror.remove(edge);
+            other.retire(edge);
         }
-        return true;
+        edge.removed = version;
+        v.retire(edge);
+        retiredEdgeQueue.add(edge);
+        numEdges.add(-2);
+        for (StructuredGraphListener listener : listeners)
+            listener.edgeDeleted(edge);
     }
 
     /**
      * Finds a list of vertices in the graph based on attributes and the data type.
-     * It compares each attribute by field and value with the attributes of the maps vertices
-     * of the same type. It adds the vertices with matching values to the list.
+     * It compares each attribute by field and value with the properties of the vertices
+     * of the same type, one column of properties at a time. It adds the vertices with matching
+     * values to the list.
      *
      * @param attributes hashmap with a variable quantity of attributes from Vertex.
      * @param tag Vertex data type.
      * @return list of vertices with matching values.
      */
     public List<Vertex> findVertexByAttributes(HashMap<String, Object> attributes, String tag) {
-        List<Vertex> v = new LinkedList();
-        if (vertices.containsKey(tag)) {
-            for (Vertex vertex : vertices.get(tag)) {
-                boolean matchesAttributes = true;
-                for (Map.Entry<String, Object> entry : attributes.entrySet()) {
-                    if (vertex.data.get(entry.getKey()) != entry.getValue()) {
-                        matchesAttributes = false;
-                        break;
-                    }
-                }
-                if (matchesAttributes)
-                    v.add(vertex);
-            }
-        }
-        return v;
+        return findVertexByAttributes(attributes, tag, LIVE);
+    }
+
+    /**
+     * Finds the vertices with the given attributes that exist at a version. Deleted vertices keep their
+     * properties in the table of their type while a snapshot can see them, so they are found when reading
+     * at a version.
+     *
+     * @param attributes hashmap with a variable quantity of attributes from Vertex.
+     * @param tag        Vertex data type.
+     * @param at         version to read, or LIVE for the current vertices.
+     * @return list of vertices with matching values.
+     */
+    private List<Vertex> findVertexByAttributes(HashMap<String, Object> attributes, String tag, long at) {
+        PropertyTable table = properties.get(Dictionary.typeCode(tag));
+        if (null == table)
+            return new LinkedList<>();
+        return table.find(attributes, vertex -> at == LIVE ? !vertex.deleted : vertex.isVisible(at));
     }
 
     /**
@@ -205,7 +821,11 @@ public class StructuredGraph {
      * @return Vertex or null.
      */
     public Vertex findVertex(HashMap<String, Object> data, String tag) {
-        List<Vertex> v = findVertexByAttributes(data, tag);
+        return findVertex(data, tag, LIVE);
+    }
+
+    private Vertex findVertex(HashMap<String, Object> data, String tag, long at) {
+        List<Vertex> v = findVertexByAttributes(data, tag, at);
         if (v.size() == 1) {
             return v.get(0);
         }
@@ -222,10 +842,13 @@ public class StructuredGraph {
     public List<String> findTypeOfRelationships(HashMap origin, String tag) {
         Vertex o = findVertex(origin, tag);
         if (o != null) {
-            List<String> types = new ArrayList<>();
-            for (Map.Entry<String, AVLTreeSet<Edge>> e : o.getEgress().entrySet())
-                types.add(e.getKey());
-            return types;
+            Lock lock = vertexLocks.readLock(o.id);
+            lock.lock();
+            try {
+                return new ArrayList<>(o.egress.tags());
+            } finally {
+                lock.unlock();
+            }
         }
         return null;
     }
@@ -245,6 +868,18 @@ public class StructuredGraph {
         return allVertex;
     }
 
+    /**
+     * Finds every match of a path pattern such as {@code (p:Person {name: 'Shrek'})-[works_at]->(c:Company)}.
+     * See PatternQuery for the syntax.
+     *
+     * @param pattern path pattern.
+     * @param limit   maximum number of matches, or a negative number for no limit.
+     * @return list of matches, each one mapping the variables of the pattern to vertices.
+     */
+    public List<Map<String, Vertex>> match(String pattern, int limit) {
+        return PatternQuery.parse(pattern).list(this, limit);
+    }
+
     /**
      * Finds the vertices in the egress list of an origin Vertex (vertices that have an entrant
      * relationship from the origin). Uses findRelatedVertices method and sets the relationship to null.
@@ -256,11 +891,10 @@ public class StructuredGraph {
      */
     public List<Vertex> findNeighbors(HashMap origin, String tag) {
         Vertex o = findVertex(origin, tag);
-        List<Vertex> neighbors = new LinkedList();
-        for (Map.Entry<String, AVLTreeSet<Edge>> entry : o.getEgress().entrySet()) {
-            neighbors.addAll(findRelatedVertices(o.getEgress(), entry.getKey(), null));
+        if (o != null) {
+            return findRelatedVertices(o.egress, o, null, null, LIVE);
         }
-        return neighbors;
+        return null;
     }
 
     /**
@@ -277,7 +911,7 @@ public class StructuredGraph {
     public <T extends Comparable> List<Vertex> findNeighbors(HashMap origin, String oTag, String dTag, T relationship) {
         Vertex o = findVertex(origin, oTag);
         if (o != null) {
-            return findRelatedVertices(o.getEgress(), dTag, relationship);
+            return findRelatedVertices(o.egress, o, dTag, relationship, LIVE);
         }
         return null;
     }
@@ -293,11 +927,10 @@ public class StructuredGraph {
      */
     public List<Vertex> findEntrantVertices(HashMap origin, String tag) {
         Vertex o = findVertex(origin, tag);
-        List<Vertex> neighbors = new LinkedList();
-        for (Map.Entry<String, AVLTreeSet<Edge>> entry : o.getIngress().entrySet()) {
-            neighbors.addAll(findRelatedVertices(o.getIngress(), entry.getKey(), null));
+        if (o != null) {
+            return findRelatedVertices(o.ingress, o, null, null, LIVE);
         }
-        return neighbors;
+        return null;
     }
 
     /**
@@ -314,42 +947,35 @@ public class StructuredGraph {
     public <T extends Comparable> List<Vertex> findEntrantVertices(HashMap origin, String oTag, String dTag, T relationship) {
         Vertex o = findVertex(origin, oTag);
         if (o != null) {
-            return findRelatedVertices(o.getIngress(), dTag, relationship);
+            return findRelatedVertices(o.ingress, o, dTag, relationship, LIVE);
         }
         return null;
     }
 
     /**
-     * Retrieve all vertex of the map, if relationship is null returns all vertices of the given tag,
-     * else returns only the ones with the same relationship and tag.
+     * Retrieve all vertex of the index, if relationship is null returns all vertices of the given tag,
+     * else returns only the ones with the same relationship and tag. A null tag returns the vertices of
+     * every type. Only the groups of edges with the tag and relationship are visited.
      *
-     * @param relationshipsByType ingress or egress vertex map
-     * @param dTag                destination vertices data type.
-     * @param relationship        between the two vertices.
-     * @param <T>                 relationship type.
+     * @param index        ingress or egress edge index
+     * @param owner        vertex the index belongs to.
+     * @param dTag         destination vertices data type.
+     * @param relationship between the two vertices.
+     * @param at           version to read, or LIVE for the current edges.
+     * @param <T>          relationship type.
      * @return list of vertices.
      */
-    private <T extends Comparable> List<Vertex> findRelatedVertices(
-            Map<String, AVLTreeSet<Edge>> relationshipsByType, String dTag, T relationship) {
-        List<Vertex> neighbors = new LinkedList();
-        for (Map.Entry<String, AVLTreeSet<Edge>> e : relationshipsByType.entrySet()) {
-            if (e.getKey().equals(dTag)) {
-                e.getValue().forEachInorder(x -> {
-                    Edge edge = (Edge) x;
-                    if (null != relationship) {
-                        if (edge.relationship.compareTo(relationship) == 0)
-                            neighbors.add(edge.vertex);
-                    } else
-                        neighbors.add(edge.vertex);
-                });
-            }
-        }
+    private <T extends Comparable> List<Vertex> findRelatedVertices(EdgeIndex index, Vertex owner, String dTag,
+                                                                    T relationship, long at) {
+        List<Vertex> neighbors = new ArrayList<>();
+        forEachEdge(owner, index, dTag, relationship, at, edge -> neighbors.add(edge.opposite(owner)));
         return neighbors;
     }
 
     /**
      * Finds a list of edges in the egress list of an origin Vertex that has the given destination data and
-     * relationship.
+     * relationship. The edges are looked up in the egress index by the destination vertex, and their
+     * relationship is matched with equals, as in the rest of the searches.
      *
      * @param origin       Hashmap with fields as keys and data as value of the origin.
      * @param oTag         origin data type.
@@ -364,17 +990,16 @@ public class StructuredGraph {
         List<Edge> edges = new LinkedList();
         Vertex o = findVertex(origin, oTag);
         Vertex d = findVertex(destination, dTag);
-        if (null != o || null != d) {
-            for (Map.Entry<String, AVLTreeSet<Edge>> e : o.egress.entrySet()) {
-                if (e.getKey().equals(dTag)) {
-                    for (Edge edge : e.getValue()) {
-                        if (null != relationship) {
-                            if (edge.relationship.compareTo(relationship) == 0 && edge.vertex.compareTo(d) == 0)
-                                edges.add(edge);
-                        } else if (edge.vertex.compareTo(d) == 0)
-                            edges.add(edge);
-                    }
+        if (null != o && null != d) {
+            Lock lock = vertexLocks.readLock(o.id);
+            lock.lock();
+            try {
+                for (Edge<?, ?> edge : o.egress.edgesTo(d)) {
+                    if (null == relationship || relationship.equals(edge.relationship))
+                        edges.add(edge);
                 }
+            } finally {
+                lock.unlock();
             }
             return edges;
         }
@@ -427,7 +1052,7 @@ public class StructuredGraph {
             for (int i = 0; i < (path.size() - 1); i++) {
                 Vertex o = path.get(i);
                 Vertex d = path.get(i + 1);
-                Edge edge = findMinorEdge(findEdgesBetweenTwoObjects(o.data, o.tag, d.data, d.tag));
+                Edge<?, ?> edge = findMinorEdge(findEdgesBetweenTwoObjects(o.getData(), o.getTag(), d.getData(), d.getTag()));
                 if (edge == null) return 0;
                 weight += edge.weight;
             }
@@ -437,226 +1062,1048 @@ public class StructuredGraph {
 
     /**
      * Finds the shortest path (path with minor total weight) between two Vertices based on attributes
-     * and type of the data.
+     * and type of the data. It follows the egress edges of every type. Uses the findShortestPath method
+     * with a null relationship.
      *
      * @param origin      origin Vertex.
      * @param oTag        origins data type.
      * @param destination destination Vertex.
      * @param dTag        destinations type.
-     * @return list of vertices in order representing the path from origin to destination.
+     * @return list of vertices in order representing the path from origin to destination, empty if the
+     * destination can't be reached or null if one of the vertices doesn't exist.
      */
     public List<Vertex> findShortestPath(HashMap origin, String oTag, HashMap destination, String dTag) {
+        return findShortestPath(origin, oTag, destination, dTag, null);
+    }
+
+    /**
+     * Finds the shortest path (path with minor total weight) between two Vertices based on attributes
+     * and type of the data, only following the edges with the given relationship or every edge if the
+     * relationship is null. Uses the dijkstra method, or the path cache if it's enabled. Edges without
+     * weight count as 1.
+     *
+     * @param origin       origin Vertex.
+     * @param oTag         origins data type.
+     * @param destination  destination Vertex.
+     * @param dTag         destinations type.
+     * @param relationship relationship the edges of the path must have, or null for any relationship.
+     * @param <T>          relationship type.
+     * @return list of vertices in order representing the path from origin to destination, empty if the
+     * destination can't be reached or null if one of the vertices doesn't exist.
+     */
+    public <T extends Comparable> List<Vertex> findShortestPath(HashMap origin, String oTag, HashMap destination,
+                                                                String dTag, T relationship) {
         Vertex o = findVertex(origin, oTag);
         Vertex d = findVertex(destination, dTag);
         if (d != null && o != null) {
-            HashMap<Vertex, Double> vertexW = new HashMap();
-            LinkedList<Vertex> queue = new LinkedList();
-            List<Vertex> path = new LinkedList();
-            vertexW.put(o, 0.0);
-            Double lastPathWeight = Double.POSITIVE_INFINITY;
-            path = findShortestPathRec(o, d, dTag, queue, vertexW, lastPathWeight, path, 0.0);
+            PathCache cache = pathCache;
+            if (null == cache)
+                return dijkstra(o, d, relationship, LIVE);
+            List<Vertex> path = cache.get(o, d, relationship);
+            if (null == path)
+                path = cachedDijkstra(cache, o, d, relationship);
             return path;
         }
         return null;
     }
 
     /**
-     * Recursively searches for the destination node in the egress list of a given origin vertex starting
-     * from the vertex with minor weight of the list. Once the destination is found it compares the current
-     * paths weight to the last one saved, if its minor it replaces it and continues with the cycle until
-     * all paths were followed. The resulting path will have the smallest weight.
+     * Starts keeping the shortest paths from a vertex to every other vertex, which are updated as edges are
+     * added and deleted instead of searching again. The result must be closed once it's not needed.
      *
-     * @param origin         origin Vertex.
-     * @param destination    destination Vertex.
-     * @param dTag           destination type.
-     * @param queue          list of the current path.
-     * @param vertexW        map with the smallest weights found for each vertex.
-     * @param lastPathWeight last smallest weight found to the destination.
-     * @param path           last shortest path found.
-     * @param weight         current path weight.
-     * @return list of vertices.
+     * @param origin       Hashmap with fields as keys and data as value of the source.
+     * @param tag          data type of the source.
+     * @param relationship relationship the edges of the paths must have, or null for any relationship.
+     * @param <T>          relationship type.
+     * @return shortest paths from the source, or null if it doesn't exist.
      */
-    private List<Vertex> findShortestPathRec(Vertex origin, Vertex destination, String dTag, LinkedList<Vertex> queue,
-                                             HashMap<Vertex, Double> vertexW, Double lastPathWeight,
-                                             List<Vertex> path, Double weight) {
-        boolean foundDestination = false;
-        queue.add(origin);
-        HashMap<Vertex, Double> currentVertexW = new HashMap();
-        for (Map.Entry<String, AVLTreeSet<Edge>> stringAVLTreeSetEntry : origin.egress.entrySet()) {
-            Map.Entry<String, AVLTreeSet<Edge>> e = stringAVLTreeSetEntry;
-            if (e.getKey().equals(dTag)) {
-                for (Edge y : e.getValue()) {
-                    Double currentWeight = weight + y.weight;
-                    updateCurrentVertexWeight(y, vertexW, currentVertexW, currentWeight);
-                    if (y.vertex == destination && currentWeight < lastPathWeight) {
-                        path.clear();
-                        path.addAll(queue);
-                        path.add(y.vertex);
-                        lastPathWeight = currentWeight;
-                        foundDestination = true;
-                    }
+    public <T extends Comparable> DynamicShortestPaths trackShortestPaths(HashMap origin, String tag,
+                                                                          T relationship) {
+        Vertex o = findVertex(origin, tag);
+        return null == o ? null : new DynamicShortestPaths(this, o, relationship);
+    }
+
+    /**
+     * Dijkstra search whose result is stored in the path cache, along with the vertices it settled.
+     *
+     * @param cache        path cache.
+     * @param origin       origin Vertex.
+     * @param destination  destination Vertex.
+     * @param relationship relationship the edges must have, or null for any relationship.
+     * @return list of vertices from origin to destination or an empty list if it can't be reached.
+     */
+    private List<Vertex> cachedDijkstra(PathCache cache, Vertex origin, Vertex destination,
+                                        Comparable<?> relationship) {
+        long stamp = cache.stamp();
+        try (ShortestPathSearch search = new ShortestPathSearch(origin, null)) {
+            List<Vertex> path = search.searchTo(destination, relationship, LIVE);
+            int count = 0;
+            for (int i = 0; i < search.discovered.size(); i++)
+                if (search.isSettled(i))
+                    count++;
+            int[] settled = new int[count];
+            double[] distance = new double[count];
+            for (int i = 0, j = 0; i < search.discovered.size(); i++) {
+                if (search.isSettled(i)) {
+                    settled[j] = search.discovered.get(i).id;
+                    distance[j++] = search.distance[i];
                 }
-                break;
-            }
-        }
-        for (Map.Entry<Vertex, Double> entry : currentVertexW.entrySet()) {
-            if (entry.getValue() <= vertexW.get(entry.getKey()) && entry.getKey() != destination) {
-                findShortestPathRec(entry.getKey(), destination, dTag, queue, vertexW,
-                        lastPathWeight, path, entry.getValue());
-                if (!foundDestination) queue.removeLast();
             }
+            cache.put(origin, destination, relationship, path, search.distanceTo(destination), settled, distance,
+                    stamp);
+            return path;
         }
-        return path;
     }
 
     /**
-     * Helper method for findShortestPathRec that adds the current weight of a vertex to
-     * the list of currentVertexW and updates the current weight of a vertex in the vertexW
-     * map if the current weight is minor to the one already registered.
+     * Finds the shortest path between two Vertices with an A* search. The heuristic receives the data of
+     * a vertex and the data of the destination and must return a lower bound of the weight still needed
+     * to reach the destination (for example the straight line distance between two locations). With a
+     * consistent heuristic the result is the same as findShortestPath but far fewer vertices are settled.
      *
-     * @param currentEdge    edge which's weight will be added / updated in maps
-     * @param vertexW        map containing the minor weights of the vertices.
-     * @param currentVertexW map containing all the weights of the current path.
-     * @param currentWeight  weight of current edge.
+     * @param origin       origin Vertex.
+     * @param oTag         origins data type.
+     * @param destination  destination Vertex.
+     * @param dTag         destinations type.
+     * @param relationship relationship the edges of the path must have, or null for any relationship.
+     * @param heuristic    estimated remaining weight between the data of a vertex and the destination's.
+     * @param <T>          relationship type.
+     * @return list of vertices in order representing the path from origin to destination, empty if the
+     * destination can't be reached or null if one of the vertices doesn't exist.
      */
-    private void updateCurrentVertexWeight(Edge currentEdge, HashMap<Vertex, Double> vertexW, HashMap<Vertex, Double> currentVertexW, Double currentWeight) {
-        if (!currentVertexW.containsKey(currentEdge.vertex)) {
-            currentVertexW.put(currentEdge.vertex, currentWeight);
-        } else {
-            if (currentVertexW.get(currentEdge.vertex) > currentWeight)
-                currentVertexW.put(currentEdge.vertex, currentWeight);
-        }
-        if (vertexW.containsKey(currentEdge.vertex)) {
-            if (currentWeight < vertexW.get(currentEdge.vertex)) {
-                vertexW.put(currentEdge.vertex, currentWeight);
-            }
-        } else {
-            vertexW.put(currentEdge.vertex, currentWeight);
+    public <T extends Comparable> List<Vertex> findShortestPath(
+            HashMap origin, String oTag, HashMap destination, String dTag, T relationship,
+            ToDoubleBiFunction<Map<String, Object>, Map<String, Object>> heuristic) {
+        Vertex o = findVertex(origin, oTag);
+        Vertex d = findVertex(destination, dTag);
+        if (d != null && o != null) {
+            return aStar(o, d, relationship, v -> heuristic.applyAsDouble(v.getProperties(), d.getProperties()), LIVE);
         }
+        return null;
     }
 
     /**
-     * Creates a list with a BFS (Breadth First Search) traversal from a given data and its type.
+     * Finds the shortest path between two Vertices with a bidirectional Dijkstra search. One search
+     * goes forward from the origin through the egress edges and the other goes backward from the
+     * destination through the ingress edges, so both only have to cover about half of the distance.
      *
-     * @param data source of the search.
-     * @param tag  type of the source data.
-     * @return list of vertices.
+     * @param origin       origin Vertex.
+     * @param oTag         origins data type.
+     * @param destination  destination Vertex.
+     * @param dTag         destinations type.
+     * @param relationship relationship the edges of the path must have, or null for any relationship.
+     * @param <T>          relationship type.
+     * @return list of vertices in order representing the path from origin to destination, empty if the
+     * destination can't be reached or null if one of the vertices doesn't exist.
      */
-    public List<Vertex> BFS(HashMap<String, Object> data, String tag) {
-        Queue queue = new LinkedList();
-        List<Vertex> visited = new LinkedList();
-        Vertex v = findVertex(data, tag);
-        if (null != v) {
-            visited.add(v);
-            queue.add(v);
-            while (!queue.isEmpty()) {
-                v = (Vertex) queue.poll();
-                for (Map.Entry<String, AVLTreeSet<Edge>> e : v.egress.entrySet()) {
-                    e.getValue().forEachInorder(n -> {
-                        Edge edge = (Edge) n;
-                        if (!visited.contains(edge.vertex)) {
-                            visited.add(edge.vertex);
-                            queue.add(edge.vertex);
-                        }
-                    });
-                }
-            }
-            return visited;
+    public <T extends Comparable> List<Vertex> findShortestPathBidirectional(HashMap origin, String oTag,
+                                                                             HashMap destination, String dTag,
+                                                                             T relationship) {
+        Vertex o = findVertex(origin, oTag);
+        Vertex d = findVertex(destination, dTag);
+        if (d != null && o != null) {
+            return bidirectionalDijkstra(o, d, relationship);
         }
         return null;
     }
 
     /**
-     * Creates a list with a DFS (Depth First Search) traversal from a given data and its type.
+     * Dijkstra search from the origin to the destination. It's an A* search without estimate.
      *
-     * @param data source of the search. It uses de DFSRec for traversing it recursively.
-     * @param tag  type of the source data.
+     * @param origin       origin Vertex.
+     * @param destination  destination Vertex.
+     * @param relationship relationship the edges must have, or null for any relationship.
+     * @param at           version to read, or LIVE for the current edges.
+     * @param <T>          relationship type.
+     * @return list of vertices from origin to destination or an empty list if it can't be reached.
+     */
+    private <T extends Comparable> List<Vertex> dijkstra(Vertex origin, Vertex destination, T relationship,
+                                                         long at) {
+        return aStar(origin, destination, relationship, null, at);
+    }
+
+    /**
+     * A* search from the origin to the destination using a ShortestPathSearch. The search stops as soon
+     * as the destination is settled. Weights are expected to be non negative and the estimate consistent.
+     *
+     * @param origin       origin Vertex.
+     * @param destination  destination Vertex.
+     * @param relationship relationship the edges must have, or null for any relationship.
+     * @param estimate     lower bound of the remaining weight from a vertex, or null for plain Dijkstra.
+     * @param at           version to read, or LIVE for the current edges.
+     * @param <T>          relationship type.
+     * @return list of vertices from origin to destination or an empty list if it can't be reached.
+     */
+    private <T extends Comparable> List<Vertex> aStar(Vertex origin, Vertex destination, T relationship,
+                                                      ToDoubleFunction<Vertex> estimate, long at) {
+        try (ShortestPathSearch search = new ShortestPathSearch(origin, estimate)) {
+            return search.searchTo(destination, relationship, at);
+        }
+    }
+
+    /**
+     * Bidirectional Dijkstra search. On each step it settles the vertex of the side with the minor
+     * distance on top of its heap, and every time an edge reaches a vertex already discovered by the
+     * other side it updates the best known path weight. The search ends when the sum of both heap tops
+     * can't improve that weight anymore.
+     *
+     * @param origin       origin Vertex.
+     * @param destination  destination Vertex.
+     * @param relationship relationship the edges must have, or null for any relationship.
+     * @param <T>          relationship type.
+     * @return list of vertices from origin to destination or an empty list if it can't be reached.
+     */
+    private <T extends Comparable> List<Vertex> bidirectionalDijkstra(Vertex origin, Vertex destination,
+                                                                      T relationship) {
+        try (ShortestPathSearch forward = new ShortestPathSearch(origin, null);
+             ShortestPathSearch backward = new ShortestPathSearch(destination, null)) {
+            double[] best = {origin == destination ? 0.0 : Double.POSITIVE_INFINITY};
+            Vertex[] meeting = {origin == destination ? origin : null};
+            while (!forward.heap.isEmpty() && !backward.heap.isEmpty()
+                    && forward.heap.peekPriority() + backward.heap.peekPriority() < best[0]) {
+                boolean isForward = forward.heap.peekPriority() <= backward.heap.peekPriority();
+                ShortestPathSearch search = isForward ? forward : backward;
+                ShortestPathSearch other = isForward ? backward : forward;
+                int current = search.heap.poll();
+                Vertex v = search.discovered.get(current);
+                forEachEdge(v, isForward ? v.egress : v.ingress, Dictionary.NONE, relationship, LIVE, edge -> {
+                    Vertex neighbor = edge.opposite(v);
+                    int next = search.relax(current, neighbor, edge.cost());
+                    double total = search.distance[next] + other.distanceTo(neighbor);
+                    if (total < best[0]) {
+                        best[0] = total;
+                        meeting[0] = neighbor;
+                    }
+                });
+            }
+            if (meeting[0] == null)
+                return new LinkedList<>();
+            LinkedList<Vertex> path = (LinkedList<Vertex>) forward.pathTo(forward.indexOf(meeting[0]));
+            List<Vertex> back = backward.pathTo(backward.indexOf(meeting[0]));
+            for (int i = back.size() - 2; i >= 0; i--)
+                path.add(back.get(i));
+            return path;
+        }
+    }
+
+    /**
+     * State of a single source shortest path search. Vertices are numbered as they are discovered, the
+     * number being looked up by vertex id, so distances and parents live in primitive arrays sized by
+     * the reached part of the graph, and pending vertices are kept in an indexed heap
+     * where each vertex is at most once and a better distance only decreases its key. When an estimate
+     * is given the heap is ordered by distance plus estimate (A*).
+     * <p>
+     * The table from vertex id to number is as big as the ids, so it's borrowed from the tables of the
+     * searches already closed instead of being allocated on every search, and closing the search only
+     * clears the ids it discovered before giving it back. The pool keeps at most one table per processor,
+     * the most searches that run at once, and the tables given back beyond that are dropped.
+     */
+    private class ShortestPathSearch implements AutoCloseable {
+        int[] slot;
+        ArrayList<Vertex> discovered = new ArrayList<>();
+        IndexedMinHeap heap = new IndexedMinHeap(64);
+        ToDoubleFunction<Vertex> estimate;
+        double[] distance = new double[64];
+        double[] remaining = new double[64];
+        int[] parent = new int[64];
+
+        ShortestPathSearch(Vertex origin, ToDoubleFunction<Vertex> estimate) {
+            int[] pooled = slotTables.poll();
+            this.slot = null == pooled ? new int[vertexIdBound()] : pooled;
+            this.estimate = estimate;
+            indexOf(origin);
+            distance[0] = 0.0;
+            heap.push(0, remaining[0]);
+        }
+
+        /**
+         * Returns the search index of a vertex, numbering it if it wasn't discovered yet.
+         *
+         * @param v vertex.
+         * @return search index of the vertex.
+         */
+        int indexOf(Vertex v) {
+            if (v.id >= slot.length)
+                slot = Arrays.copyOf(slot, Math.max(v.id + 1, slot.length * 2));
+            int i = slot[v.id] - 1;
+            if (i < 0) {
+                i = discovered.size();
+                slot[v.id] = i + 1;
+                discovered.add(v);
+                if (i == distance.length) {
+                    distance = Arrays.copyOf(distance, i * 2);
+                    remaining = Arrays.copyOf(remaining, i * 2);
+                    parent = Arrays.copyOf(parent, i * 2);
+                }
+                distance[i] = Double.POSITIVE_INFINITY;
+                remaining[i] = null == estimate ? 0.0 : estimate.applyAsDouble(v);
+                parent[i] = -1;
+            }
+            return i;
+        }
+
+        /**
+         * Settles vertices until the destination is settled.
+         *
+         * @param destination  destination Vertex.
+         * @param relationship relationship the edges must have, or null for any relationship.
+         * @param at           version to read, or LIVE for the current edges.
+         * @return list of vertices from origin to destination or an empty list if it can't be reached.
+         */
+        List<Vertex> searchTo(Vertex destination, Comparable<?> relationship, long at) {
+            while (!heap.isEmpty()) {
+                int current = heap.poll();
+                Vertex v = discovered.get(current);
+                if (v == destination)
+                    return pathTo(current);
+                forEachEdge(v, v.egress, Dictionary.NONE, relationship, at,
+                        edge -> relax(current, edge.vertex, edge.cost()));
+            }
+            return new LinkedList<>();
+        }
+
+        /**
+         * Checks whether a discovered vertex already left the heap, so its distance is final.
+         *
+         * @param i search index of the vertex.
+         * @return true if the vertex is settled.
+         */
+        boolean isSettled(int i) {
+            return !heap.contains(i);
+        }
+
+        /**
+         * Returns the best distance found so far to a vertex without discovering it.
+         *
+         * @param v vertex.
+         * @return distance from the origin or positive infinity if it wasn't reached.
+         */
+        double distanceTo(Vertex v) {
+            int i = v.id < slot.length ? slot[v.id] - 1 : -1;
+            return i < 0 ? Double.POSITIVE_INFINITY : distance[i];
+        }
+
+        /**
+         * Updates the distance of a neighbor if going through the given settled vertex is shorter.
+         *
+         * @param from     search index of the settled vertex.
+         * @param neighbor vertex at the other end of an edge of the settled vertex.
+         * @param weight   weight of the edge.
+         * @return search index of the neighbor.
+         */
+        int relax(int from, Vertex neighbor, double weight) {
+            int to = indexOf(neighbor);
+            double candidate = distance[from] + weight;
+            if (candidate < distance[to]) {
+                distance[to] = candidate;
+                parent[to] = from;
+                heap.push(to, candidate + remaining[to]);
+            }
+            return to;
+        }
+
+        /**
+         * Rebuilds the path to a vertex by following the parents back to the origin.
+         *
+         * @param last search index of the last vertex of the path.
+         * @return list of vertices from the origin to the last vertex.
+         */
+        List<Vertex> pathTo(int last) {
+            LinkedList<Vertex> path = new LinkedList<>();
+            for (int i = last; i >= 0; i = parent[i])
+                path.addFirst(discovered.get(i));
+            return path;
+        }
+
+        /**
+         * Clears the ids discovered from the table of the search and gives it back for the next search.
+         */
+        @Override
+        public void close() {
+            for (Vertex v : discovered)
+                slot[v.id] = 0;
+            slotTables.offer(slot);
+        }
+    }
+
+    /**
+     * Creates a list with a BFS (Breadth First Search) traversal from a given data and its type.
+     * It collects the vertices of a breadth first traversal iterator.
+     *
+     * @param data source of the search.
+     * @param tag  type of the source data.
+     * @return list of vertices.
+     */
+    public List<Vertex> BFS(HashMap<String, Object> data, String tag) {
+        Vertex v = findVertex(data, tag);
+        if (null != v) {
+            List<Vertex> visited = new ArrayList<>();
+            new BreadthFirstIterator(v, -1, LIVE).forEachRemaining(visited::add);
+            return visited;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a list with a DFS (Depth First Search) traversal from a given data and its type.
+     * It collects the vertices of a depth first traversal iterator, which keeps its own stack
+     * so deep graphs don't overflow the call stack.
+     *
+     * @param data source of the search.
+     * @param tag  type of the source data.
      * @return list of vertices.
      */
     public List<Vertex> DFS(HashMap<String, Object> data, String tag) {
-        List<Vertex> visited = new LinkedList<>();
         Vertex origin = findVertex(data, tag);
         if (origin != null) {
-            visited = DFSRec(origin, visited);
+            List<Vertex> visited = new ArrayList<>();
+            new DepthFirstIterator(origin, -1, LIVE).forEachRemaining(visited::add);
             return visited;
         }
         return null;
     }
 
     /**
-     * Recursively traverses the graph based on a current Vertex which is marked as visited
-     * by going to its egress related vertices if they haven't been visited yet.
+     * Creates an iterator that traverses the graph from a given data and its type following the egress
+     * edges. Vertices are produced lazily: the graph is only explored as far as needed to return the
+     * next vertex, so stopping early doesn't pay for the rest of the traversal.
+     *
+     * @param data     source of the traversal.
+     * @param tag      type of the source data.
+     * @param order    breadth first or depth first.
+     * @param maxDepth maximum number of edges from the source, or a negative number for no limit.
+     * @return iterator of vertices starting by the source, or null if the source doesn't exist.
+     */
+    public Iterator<Vertex> iterator(HashMap<String, Object> data, String tag, TraversalOrder order, int maxDepth) {
+        return iterator(data, tag, order, maxDepth, LIVE);
+    }
+
+    private Iterator<Vertex> iterator(HashMap<String, Object> data, String tag, TraversalOrder order, int maxDepth,
+                                      long at) {
+        Vertex origin = findVertex(data, tag, at);
+        if (origin != null) {
+            if (order == TraversalOrder.DEPTH_FIRST)
+                return new DepthFirstIterator(origin, maxDepth, at);
+            return new BreadthFirstIterator(origin, maxDepth, at);
+        }
+        return null;
+    }
+
+    /**
+     * Creates a sequential stream of the vertices of a traversal from a given data and its type. It
+     * uses the iterator method, so short circuiting operations like findFirst, anyMatch or limit stop
+     * the traversal.
+     *
+     * @param data     source of the traversal.
+     * @param tag      type of the source data.
+     * @param order    breadth first or depth first.
+     * @param maxDepth maximum number of edges from the source, or a negative number for no limit.
+     * @return stream of vertices, empty if the source doesn't exist.
+     */
+    public Stream<Vertex> stream(HashMap<String, Object> data, String tag, TraversalOrder order, int maxDepth) {
+        return stream(iterator(data, tag, order, maxDepth));
+    }
+
+    private static Stream<Vertex> stream(Iterator<Vertex> it) {
+        if (it == null)
+            return Stream.empty();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Finds the vertices within k hops of a given data and its type following the egress edges. See
+     * the kHop method with a filter.
+     *
+     * @param origin       source of the expansion.
+     * @param tag          type of the source data.
+     * @param k            maximum number of edges from the source.
+     * @param dTag         type of the vertices to go through, or null for every type.
+     * @param relationship relationship of the edges to follow, or null for every relationship.
+     * @param <T>          relationship type.
+     * @return stream of vertices in order of distance, empty if the source doesn't exist.
+     */
+    public <T extends Comparable> Stream<Vertex> kHop(HashMap<String, Object> origin, String tag, int k, String dTag,
+                                                      T relationship) {
+        return kHop(origin, tag, k, dTag, relationship, null);
+    }
+
+    /**
+     * Finds the vertices within k hops of a given data and its type following the egress edges accepted
+     * by a filter, without the source. Each vertex is returned once, at its distance from the source.
+     * <p>
+     * The expansion goes one frontier at a time and only when the stream needs it, so short circuiting
+     * operations stop it. Big frontiers are split among the threads of the common fork join pool, and the
+     * vertices found are deduplicated through a bit set over their ids. Vertices added after the
+     * expansion started aren't returned.
      *
-     * @param current Vertex.
-     * @param visited list of visited vertices.
-     * @return list of all visited vertices.
+     * @param origin source of the expansion.
+     * @param tag    type of the source data.
+     * @param k      maximum number of edges from the source.
+     * @param filter edges to follow, or null for every edge.
+     * @return stream of vertices in order of distance, empty if the source doesn't exist.
      */
-    private List<Vertex> DFSRec(Vertex current, List visited) {
-        visited.add(current);
-        for (Map.Entry<String, AVLTreeSet<Edge>> e : current.egress.entrySet()) {
-            e.getValue().forEachInorder(x -> {
-                Edge edge = (Edge) x;
-                if (!visited.contains(edge.vertex)) {
-                    DFSRec(edge.vertex, visited);
+    public Stream<Vertex> kHop(HashMap<String, Object> origin, String tag, int k, Predicate<? super Edge<?, ?>> filter) {
+        return kHop(origin, tag, k, null, null, filter);
+    }
+
+    private Stream<Vertex> kHop(HashMap<String, Object> origin, String tag, int k, String dTag,
+                                Comparable<?> relationship, Predicate<? super Edge<?, ?>> filter) {
+        Vertex o = findVertex(origin, tag);
+        Integer dCode = tagCode(dTag);
+        if (null == o || k <= 0 || null == dCode)
+            return Stream.empty();
+        ConcurrentBitSet visited = new ConcurrentBitSet(vertexIdBound());
+        visited.set(o.id);
+        Iterator<List<Vertex>> levels = new Iterator<List<Vertex>>() {
+            List<Vertex> frontier = Collections.singletonList(o);
+            int depth;
+
+            @Override
+            public boolean hasNext() {
+                return depth < k && !frontier.isEmpty();
+            }
+
+            @Override
+            public List<Vertex> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                depth++;
+                Frontier expansion = new Frontier(frontier, 0, frontier.size(), visited, dCode, relationship, filter);
+                frontier = frontier.size() > Frontier.THRESHOLD ? ForkJoinPool.commonPool().invoke(expansion)
+                        : expansion.compute();
+                return frontier;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(levels, Spliterator.ORDERED), false)
+                .flatMap(List::stream);
+    }
+
+    /**
+     * Expansion of a slice of a frontier into the vertices not visited yet, split in halves among the
+     * threads of the fork join pool while the slice has many vertices.
+     */
+    @SuppressWarnings("serial")
+    private class Frontier extends RecursiveTask<List<Vertex>> {
+        private static final int THRESHOLD = 256;
+
+        private final List<Vertex> frontier;
+        private final int from;
+        private final int to;
+        private final ConcurrentBitSet visited;
+        private final int tag;
+        private final Comparable<?> relationship;
+        private final Predicate<? super Edge<?, ?>> filter;
+
+        Frontier(List<Vertex> frontier, int from, int to, ConcurrentBitSet visited, int tag,
+                 Comparable<?> relationship, Predicate<? super Edge<?, ?>> filter) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.visited = visited;
+            this.tag = tag;
+            this.relationship = relationship;
+            this.filter = filter;
+        }
+
+        @Override
+        protected List<Vertex> compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                Frontier left = new Frontier(frontier, from, middle, visited, tag, relationship, filter);
+                left.fork();
+                List<Vertex> right = new Frontier(frontier, middle, to, visited, tag, relationship, filter)
+                        .compute();
+                List<Vertex> next = left.join();
+                if (next.isEmpty())
+                    return right;
+                next.addAll(right);
+                return next;
+            }
+            List<Vertex> next = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                forEachEdge(frontier.get(i), frontier.get(i).egress, tag, relationship, LIVE, edge -> {
+                    int id = edge.vertex.id;
+                    if (id < visited.size() && (null == filter || filter.test(edge)) && visited.set(id))
+                        next.add(edge.vertex);
+                });
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Order in which a traversal visits the vertices.
+     */
+    public enum TraversalOrder {
+        BREADTH_FIRST, DEPTH_FIRST
+    }
+
+    /**
+     * Breadth first traversal iterator. Vertices are returned in the order they are discovered and
+     * expanded in the same order, one edge at a time and only when no discovered vertex is waiting
+     * to be returned. The set of marked ids grows with the vertices reached, so a short traversal of a
+     * big graph doesn't pay for every id.
+     */
+    private class BreadthFirstIterator implements Iterator<Vertex> {
+        private final BitSet marked = new BitSet();
+        private final ArrayDeque<Vertex> ready = new ArrayDeque<>();
+        private final ArrayDeque<Integer> readyDepth = new ArrayDeque<>();
+        private final ArrayDeque<Vertex> returned = new ArrayDeque<>();
+        private final ArrayDeque<Integer> returnedDepth = new ArrayDeque<>();
+        private final int maxDepth;
+        private final long at;
+        private Iterator<Edge<?, ?>> expanding = Collections.emptyIterator();
+        private int expandingDepth;
+
+        BreadthFirstIterator(Vertex origin, int maxDepth, long at) {
+            this.maxDepth = maxDepth;
+            this.at = at;
+            marked.set(origin.id);
+            ready.add(origin);
+            readyDepth.add(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (ready.isEmpty()) {
+                if (expanding.hasNext()) {
+                    Vertex next = expanding.next().vertex;
+                    if (!marked.get(next.id)) {
+                        marked.set(next.id);
+                        ready.add(next);
+                        readyDepth.add(expandingDepth + 1);
+                    }
+                } else if (!returned.isEmpty()) {
+                    Vertex v = returned.poll();
+                    expandingDepth = returnedDepth.poll();
+                    expanding = maxDepth >= 0 && expandingDepth >= maxDepth
+                            ? Collections.<Edge<?, ?>>emptyIterator() : edgesOf(v, v.egress, at).iterator();
+                } else {
+                    return false;
                 }
-            });
+            }
+            return true;
+        }
+
+        @Override
+        public Vertex next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Vertex v = ready.poll();
+            returned.add(v);
+            returnedDepth.add(readyDepth.poll());
+            return v;
+        }
+    }
+
+    /**
+     * Depth first traversal iterator. It keeps an explicit stack with the edges still to follow of
+     * every vertex in the current path, and returns each vertex the first time it's reached.
+     * <p>
+     * With a maximum depth a vertex can be reached first through a longer path than its shortest one,
+     * so the smallest depth each vertex was reached at is kept, and a vertex reached again at a smaller
+     * depth is expanded again, without returning it twice, to reach the vertices below it. The marked
+     * ids and the depths only take room for the vertices reached.
+     */
+    private class DepthFirstIterator implements Iterator<Vertex> {
+        private final BitSet marked = new BitSet();
+        private final ArrayDeque<Iterator<Edge<?, ?>>> stack = new ArrayDeque<>();
+        private final int maxDepth;
+        private final HashMap<Integer, Integer> depth;
+        private final long at;
+        private Vertex pending;
+
+        DepthFirstIterator(Vertex origin, int maxDepth, long at) {
+            this.maxDepth = maxDepth;
+            this.depth = maxDepth >= 0 ? new HashMap<>() : null;
+            this.at = at;
+            marked.set(origin.id);
+            pending = origin;
+        }
+
+        private Iterator<Edge<?, ?>> edgesToFollow(Vertex v, int d) {
+            return maxDepth >= 0 && d >= maxDepth ? Collections.<Edge<?, ?>>emptyIterator()
+                    : edgesOf(v, v.egress, at).iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pending == null && !stack.isEmpty()) {
+                Iterator<Edge<?, ?>> edges = stack.peek();
+                if (!edges.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Vertex next = edges.next().vertex;
+                int d = stack.size();
+                if (!marked.get(next.id)) {
+                    marked.set(next.id);
+                    if (null != depth)
+                        depth.put(next.id, d);
+                    pending = next;
+                } else if (null != depth && d < depth.getOrDefault(next.id, 0)) {
+                    depth.put(next.id, d);
+                    stack.push(edgesToFollow(next, d));
+                }
+            }
+            return pending != null;
+        }
+
+        @Override
+        public Vertex next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Vertex v = pending;
+            pending = null;
+            stack.push(edgesToFollow(v, stack.size()));
+            return v;
+        }
+    }
+
+    /**
+     * Read only view of the graph at the version it was opened. Vertices and edges added later are not
+     * seen and the deleted ones still are, while other threads keep modifying the graph. The data maps of
+     * the vertices are shared with the graph and are not versioned.
+     * <p>
+     * Iterators and streams read the snapshot lazily, so they must be consumed before closing it.
+     */
+    public class Snapshot implements AutoCloseable {
+
+        private volatile long version = -1;
+        private volatile boolean closed;
+
+        public long getVersion() {
+            return version;
+        }
+
+        private long at() {
+            if (closed)
+                throw new IllegalStateException("Snapshot is closed");
+            return version;
+        }
+
+        /**
+         * Finds the vertices with the given attributes that existed when the snapshot was opened.
+         *
+         * @param attributes hashmap with a variable quantity of attributes from Vertex.
+         * @param tag        Vertex data type.
+         * @return list of vertices with matching values.
+         */
+        public List<Vertex> findVertexByAttributes(HashMap<String, Object> attributes, String tag) {
+            return StructuredGraph.this.findVertexByAttributes(attributes, tag, at());
+        }
+
+        /**
+         * Finds the vertex with the given data that existed when the snapshot was opened.
+         *
+         * @param data hashmap with fields as keys and data as value.
+         * @param tag  data type.
+         * @return vertex or null if it didn't exist or isn't unique.
+         */
+        public Vertex findVertex(HashMap<String, Object> data, String tag) {
+            return StructuredGraph.this.findVertex(data, tag, at());
+        }
+
+        /**
+         * Finds the vertices in the egress list of an origin Vertex when the snapshot was opened.
+         *
+         * @param origin Vertex in which the search will be based.
+         * @param tag    data type.
+         * @return list of vertices or null if the vertex didn't exist.
+         */
+        public List<Vertex> findNeighbors(HashMap origin, String tag) {
+            long at = at();
+            Vertex o = StructuredGraph.this.findVertex(origin, tag, at);
+            return null == o ? null : findRelatedVertices(o.egress, o, null, null, at);
+        }
+
+        /**
+         * Finds the vertices in the ingress list of an origin Vertex when the snapshot was opened.
+         *
+         * @param origin Vertex in which the search will be based.
+         * @param tag    data type.
+         * @return list of vertices or null if the vertex didn't exist.
+         */
+        public List<Vertex> findEntrantVertices(HashMap origin, String tag) {
+            long at = at();
+            Vertex o = StructuredGraph.this.findVertex(origin, tag, at);
+            return null == o ? null : findRelatedVertices(o.ingress, o, null, null, at);
+        }
+
+        /**
+         * Creates a list with a BFS traversal of the snapshot from a given data and its type.
+         *
+         * @param data source of the search.
+         * @param tag  type of the source data.
+         * @return list of vertices or null if the source didn't exist.
+         */
+        public List<Vertex> BFS(HashMap<String, Object> data, String tag) {
+            return traversal(data, tag, TraversalOrder.BREADTH_FIRST);
+        }
+
+        /**
+         * Creates a list with a DFS traversal of the snapshot from a given data and its type.
+         *
+         * @param data source of the search.
+         * @param tag  type of the source data.
+         * @return list of vertices or null if the source didn't exist.
+         */
+        public List<Vertex> DFS(HashMap<String, Object> data, String tag) {
+            return traversal(data, tag, TraversalOrder.DEPTH_FIRST);
+        }
+
+        private List<Vertex> traversal(HashMap<String, Object> data, String tag, TraversalOrder order) {
+            Iterator<Vertex> it = StructuredGraph.this.iterator(data, tag, order, -1, at());
+            if (null == it)
+                return null;
+            List<Vertex> visited = new ArrayList<>();
+            it.forEachRemaining(visited::add);
+            return visited;
+        }
+
+        /**
+         * Creates a lazy traversal iterator of the snapshot. See StructuredGraph.iterator.
+         *
+         * @param data     source of the traversal.
+         * @param tag      type of the source data.
+         * @param order    breadth first or depth first.
+         * @param maxDepth maximum number of edges from the source, or a negative number for no limit.
+         * @return iterator of vertices starting by the source, or null if the source didn't exist.
+         */
+        public Iterator<Vertex> iterator(HashMap<String, Object> data, String tag, TraversalOrder order,
+                                         int maxDepth) {
+            return StructuredGraph.this.iterator(data, tag, order, maxDepth, at());
+        }
+
+        public Stream<Vertex> stream(HashMap<String, Object> data, String tag, TraversalOrder order, int maxDepth) {
+            return StructuredGraph.stream(iterator(data, tag, order, maxDepth));
+        }
+
+        public List<Vertex> findShortestPath(HashMap origin, String oTag, HashMap destination, String dTag) {
+            return findShortestPath(origin, oTag, destination, dTag, null);
+        }
+
+        /**
+         * Finds the shortest path between two Vertices of the snapshot with the dijkstra method.
+         *
+         * @param origin       origin Vertex.
+         * @param oTag         origins data type.
+         * @param destination  destination Vertex.
+         * @param dTag         destinations type.
+         * @param relationship relationship the edges of the path must have, or null for any relationship.
+         * @param <T>          relationship type.
+         * @return list of vertices from origin to destination, empty if the destination can't be reached
+         * or null if one of the vertices didn't exist.
+         */
+        public <T extends Comparable> List<Vertex> findShortestPath(HashMap origin, String oTag, HashMap destination,
+                                                                    String dTag, T relationship) {
+            long at = at();
+            Vertex o = StructuredGraph.this.findVertex(origin, oTag, at);
+            Vertex d = StructuredGraph.this.findVertex(destination, dTag, at);
+            if (d != null && o != null)
+                return dijkstra(o, d, relationship, at);
+            return null;
+        }
+
+        /**
+         * Closes the snapshot so the versions only it could see are collected.
+         */
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            openSnapshots.remove(this);
+            collectGarbage();
         }
-        return visited;
     }
 
     public class Vertex implements Comparable {
-        String tag;
-        HashMap<String, Object> data;
+        int id = -1;
+        int tag;
+        volatile PropertyTable table;
+        int row;
+        HashMap<String, Object> pending;
+        volatile boolean deleted;
+        long created;
+        volatile long removed = LIVE;
+        ArrayList<Edge<?, ?>> retired;
+
+        EdgeIndex ingress;
+        EdgeIndex egress;
+
+        public int getId() {
+            return id;
+        }
+
+        public String getTag() {
+            return Dictionary.decode(tag);
+        }
+
+        /**
+         * Copies the properties of the vertex. Changing the map doesn't change the vertex; setProperty
+         * does.
+         *
+         * @return Hashmap with fields as keys and data as value.
+         */
+        public HashMap<String, Object> getData() {
+            PropertyTable t = table;
+            if (null != t)
+                return t.copy(this);
+            return null == pending ? null : new HashMap<>(pending);
+        }
+
+        /**
+         * Reads a property of the vertex.
+         *
+         * @param key field.
+         * @return value, or null if the vertex doesn't have it.
+         */
+        public Object getProperty(String key) {
+            PropertyTable t = table;
+            if (null != t)
+                return t.get(this, key);
+            return null == pending ? null : pending.get(key);
+        }
+
+        /**
+         * Changes a property of the vertex, or removes it if the value is null. Changes aren't written to
+         * the write-ahead log and open snapshots see them too.
+         *
+         * @param key   field.
+         * @param value new value.
+         */
+        public void setProperty(String key, Object value) {
+            PropertyTable t = table;
+            if (null != t) {
+                t.set(this, key, value);
+            } else {
+                if (null == pending)
+                    pending = new HashMap<>();
+                if (null == value)
+                    pending.remove(key);
+                else
+                    pending.put(key, value);
+            }
+        }
+
+        /**
+         * Read only view of the properties of the vertex. Reading a single value goes to its column
+         * without copying the others.
+         *
+         * @return properties.
+         */
+        public Map<String, Object> getProperties() {
+            return new AbstractMap<String, Object>() {
+                @Override
+                public Object get(Object key) {
+                    return key instanceof String ? getProperty((String) key) : null;
+                }
 
-        Map<String, AVLTreeSet<Edge>> ingress;
-        Map<String, AVLTreeSet<Edge>> egress;
+                @Override
+                public boolean containsKey(Object key) {
+                    return null != get(key);
+                }
 
-        public Map<String, AVLTreeSet<Edge>> getIngress() {
+                @Override
+                public Set<Entry<String, Object>> entrySet() {
+                    HashMap<String, Object> data = getData();
+                    return null == data ? Collections.<Entry<String, Object>>emptySet()
+                            : Collections.unmodifiableMap(data).entrySet();
+                }
+            };
+        }
+
+        public EdgeIndex getIngress() {
             return ingress;
         }
 
-        public Map<String, AVLTreeSet<Edge>> getEgress() {
+        public EdgeIndex getEgress() {
             return egress;
         }
 
         /**
          * Constructor that creates a vertex with a given data and type
-         * creating empty ingress and egress maps.
+         * creating empty ingress and egress indexes.
          *
          * @param data Hashmap with fields as keys and data as value.
          * @param tag  data type.
          */
         public Vertex(HashMap data, String tag) {
-            this.tag = tag;
-            this.data = data;
-            ingress = new HashMap();
-            egress = new HashMap();
+            this.tag = Dictionary.encode(tag);
+            this.pending = data;
+            ingress = new EdgeIndex(this);
+            egress = new EdgeIndex(this);
         }
 
         @Override
         public String toString() {
             return "VERTEX \n" +
-                    " - Data: " + data.toString();
+                    " - Data: " + getData();
         }
 
         public void printVertex() {
             System.out.println(
                     "\nVERTEX \n" +
-                            " - Data: " + data.toString()
+                            " - Data: " + getData()
             );
             System.out.println(" ----- Ingress ----- ");
-            Iterator<Map.Entry<String, AVLTreeSet<Edge>>> it = ingress.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<String, AVLTreeSet<Edge>> e = it.next();
-                e.getValue().forEachInorder(System.out::println);
-            }
+            ingress.forEach(System.out::println);
             System.out.println(" ----- Egress ----- ");
-            Iterator<Map.Entry<String, AVLTreeSet<Edge>>> it2 = egress.entrySet().iterator();
-            while (it2.hasNext()) {
-                Map.Entry<String, AVLTreeSet<Edge>> e = it2.next();
-                e.getValue().forEachInorder(System.out::println);
+            egress.forEach(System.out::println);
+
+        }
+
+        /**
+         * Checks whether the vertex exists at a version.
+         *
+         * @param at version.
+         * @return true if the vertex was created and not yet deleted at the version.
+         */
+        boolean isVisible(long at) {
+            return created <= at && removed > at;
+        }
+
+        /**
+         * Checks whether the vertex has every given attribute with the same value.
+         *
+         * @param attributes fields and values to compare.
+         * @return true if every value is equal.
+         */
+        boolean matches(Map<String, Object> attributes) {
+            PropertyTable t = table;
+            if (null != t)
+                return t.matches(this, attributes);
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                if (!Objects.equals(getProperty(entry.getKey()), entry.getValue()))
+                    return false;
             }
+            return true;
+        }
 
+        /**
+         * Keeps a deleted edge of the vertex for the snapshots that can still see it. The lock of the
+         * vertex must be held.
+         *
+         * @param edge deleted edge.
+         */
+        void retire(Edge<?, ?> edge) {
+            if (null == retired)
+                retired = new ArrayList<>(2);
+            retired.add(edge);
+        }
+
+        /**
+         * Drops a deleted edge no snapshot can see anymore. The lock of the vertex must be held. A deleted
+         * vertex keeps its edges until the vertex itself is collected and they are dropped all together,
+         * so the many edges of a deleted hub aren't searched one by one.
+         *
+         * @param edge deleted edge.
+         */
+        void forget(Edge<?, ?> edge) {
+            if (!deleted && null != retired && retired.remove(edge) && retired.isEmpty())
+                retired = null;
         }
 
         /**
@@ -669,86 +2116,122 @@ public class StructuredGraph {
          * @param isBidirectional boolean.
          * @param weight          numerical value of the relationship.
          * @param <T>             type of relationship data.
-         * @return boolean true if the edges were added or false if the destination or relationship were null.
+         * @return boolean true if the edges were added or false if the destination or relationship were null,
+         * or one of the vertices was deleted.
          */
         public <T extends Comparable> boolean addRelationship(Vertex destination, T relationship, boolean isBidirectional, Double weight) {
             if (destination != null && relationship != null) {
-                this.addEgressRelationship(this, destination, relationship, destination.tag, weight);
-                if (isBidirectional)
-                    this.addEgressRelationship(destination, this, relationship, destination.tag, weight);
-                return true;
+                boolean added = addEdges(this, destination, relationship, isBidirectional, weight);
+                collectGarbage();
+                return added;
             }
             return false;
         }
 
         /**
-         * Adds a relationship between the current vertex and a given destination vertex by creating Edges.
-         * If the relationship is unidirectional it creates an edge in the egress map with the destination
-         * vertex and an edge in the ingress map of the destination vertex with the current vertex.
-         * If its bidirectional it does the same the other way around.
+         * Adds a relationship from a local vertex to a destination vertex by creating an Edge, which is
+         * added to the egress index of the local vertex and to the ingress index of the destination.
+         * If the same edge already exists nothing is added.
          *
-         * @param local          origin vertex
-         * @param destination    other vertex
-         * @param relationship   data between the two vertices.
-         * @param destinationTag destination data type.
-         * @param weight         int numerical value of the relationship.
-         * @param <T>            type of relationship data.
+         * @param local        origin vertex
+         * @param destination  other vertex
+         * @param relationship data between the two vertices.
+         * @param weight       numerical value of the relationship.
+         * @param version      version of the write.
+         * @param <T>          type of relationship data.
          * @return boolean true if the edges were added.
          */
         private <T extends Comparable> boolean addEgressRelationship(Vertex local, Vertex destination,
-                                                                    T relationship, String destinationTag,
-                                                                    Double weight) {
-            if (!local.egress.containsKey(destinationTag)) {
-                local.egress.put(destinationTag, new AVLTreeSet());
-            }
-            local.egress.get(destinationTag).add(new Edge(relationship, destination, weight));
-            numEdges++;
-            if (!destination.ingress.containsKey(local.tag)) {
-                destination.ingress.put(local.tag, new AVLTreeSet());
-            }
-            destination.ingress.get(local.tag).add(new Edge(relationship, local, weight));
-            numEdges++;
+                                                                    T relationship, Double weight, long version) {
+            Edge edge = new Edge(relationship, local, destination, weight);
+            edge.created = version;
+            if (!local.egress.add(edge))
+                return false;
+            destination.ingress.add(edge);
+            numEdges.add(2);
+            for (StructuredGraphListener listener : listeners)
+                listener.edgeAdded(edge);
             return true;
         }
 
+        /**
+         * Orders vertices by their id.
+         *
+         * @param o other vertex.
+         * @return comparison of both ids, or 0 if the object isn't a vertex.
+         */
         @Override
         public int compareTo(Object o) {
-            try {
-                Vertex v = (Vertex) o;
-                int i = data.hashCode() - (v.data.hashCode());
-                if (i > 0)
-                    return 1;
-                if (i < 0)
-                    return -1;
-            } catch (Exception ex) {
+            if (!(o instanceof Vertex))
                 return 0;
-            }
-            return 0;
+            return Integer.compare(id, ((Vertex) o).id);
         }
     }
 
     public class Edge<V extends Comparable, T extends Comparable> implements Comparable {
         T relationship;
+        Vertex origin;
         Vertex vertex;
         Double weight;
+        long created;
+        volatile long removed = LIVE;
 
         /**
-         * Constructor receiving all the attributes.
+         * Constructor receiving all the attributes. The same edge is kept in the egress index of the
+         * origin and in the ingress index of the destination.
          *
          * @param relationship data that relates both edges.
+         * @param origin       origin vertex
          * @param vertex       destination vertex
          * @param weight       numerical value of relationship.
          */
-        public Edge(T relationship, Vertex vertex, Double weight) {
+        public Edge(T relationship, Vertex origin, Vertex vertex, Double weight) {
             this.relationship = relationship;
+            this.origin = origin;
             this.vertex = vertex;
             this.weight = weight;
         }
 
+        public T getRelationship() {
+            return relationship;
+        }
+
+        public Vertex getOrigin() {
+            return origin;
+        }
+
+        public Vertex getVertex() {
+            return vertex;
+        }
+
+        public Double getWeight() {
+            return weight;
+        }
+
+        /**
+         * Weight followed by the path algorithms, where an edge without weight counts as 1.
+         *
+         * @return weight of the edge, or 1 if it's null.
+         */
+        double cost() {
+            return null == weight ? 1 : weight;
+        }
+
+        /**
+         * Returns the vertex at the other end of the edge.
+         *
+         * @param v origin or destination of the edge.
+         * @return destination if v is the origin, otherwise the origin.
+         */
+        public Vertex opposite(Vertex v) {
+            return v == origin ? vertex : origin;
+        }
+
         @Override
         public String toString() {
             return " * EDGE: " + "\n" +
                     " - Relationship: " + relationship + "\n" +
+                    " - Origin: " + origin.toString() + "\n" +
                     " - Vertex: " + vertex.toString() + "\n" +
                     " - Weight: " + weight + "\n";
         }
@@ -762,19 +2245,18 @@ public class StructuredGraph {
                     return 1;
                 if (i < 0)
                     return -1;
-                int i2 = this.weight.compareTo(e.weight);
+                int i2 = Double.compare(cost(), e.cost());
                 if (i2 > 0)
                     return 1;
                 if (i2 < 0)
                     return -1;
-                if (this.vertex.compareTo(e.vertex) > 0)
-                    return 1;
-                if (this.vertex.compareTo(e.vertex) < 0)
-                    return -1;
+                int i3 = this.origin.compareTo(e.origin);
+                if (i3 != 0)
+                    return i3;
+                return this.vertex.compareTo(e.vertex);
             } catch (Exception ex) {
                 return 0;
             }
-            return 0;
         }
     }
 }
\ No newline at end of file
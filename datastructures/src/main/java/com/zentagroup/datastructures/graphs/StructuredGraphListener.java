@@ -0,0 +1,27 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Edge;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+/**
+ * Receives the changes made to a StructuredGraph, registered with StructuredGraph.addListener.
+ * <p>
+ * Methods are called by the thread making the change while it holds the locks of the vertices involved,
+ * right after the change is made, so they must be short and must not modify the graph. Every edge of a
+ * bidirectional relationship is notified on its own, and deleting a vertex notifies the deletion of each
+ * of its edges before the deletion of the vertex.
+ */
+public interface StructuredGraphListener {
+
+    default void vertexAdded(Vertex vertex) {
+    }
+
+    default void vertexDeleted(Vertex vertex) {
+    }
+
+    default void edgeAdded(Edge<?, ?> edge) {
+    }
+
+    default void edgeDeleted(Edge<?, ?> edge) {
+    }
+}
@@ -0,0 +1,337 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Bulk loader that fills a StructuredGraph from delimited text files (CSV, TSV or any single character
+ * separator, without quoted fields).
+ * <p>
+ * The vertices file starts with a header: the first column is an external id, the second the type of
+ * the vertex and the rest are the names of its attributes. The id is kept in the vertex data under the
+ * name of the first column and empty values are left out. Values are loaded as strings.
+ * <pre>
+ * id,tag,name,age
+ * 1,Person,Shrek,27
+ * </pre>
+ * The edges file also starts with a header and has the columns origin id, destination id, relationship,
+ * and optionally weight (1.0 by default) and whether the edge is bidirectional (false by default).
+ * <pre>
+ * origin,destination,relationship,weight,bidirectional
+ * 1,2,lives with,1.0,true
+ * </pre>
+ * Files are streamed through a file channel in batches of lines. Batches are parsed in parallel while the
+ * previous ones are being inserted, and vertices are resolved through the external id dictionary instead
+ * of searching the graph. The edges of a batch are grouped by origin and each group is added in one call,
+ * with a single version. Lines that can't be parsed or reference unknown ids are skipped and counted.
+ */
+public class StructuredGraphLoader {
+
+    private static final int BATCH_SIZE = 8192;
+    private static final int READ_BUFFER = 1 << 20;
+
+    private final StructuredGraph graph;
+    private final char separator;
+    private final HashMap<String, Vertex> vertexById = new HashMap<>();
+    private final ConcurrentHashMap<String, String> canonical = new ConcurrentHashMap<>();
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int skippedLines;
+
+    /**
+     * Constructor that creates a loader for a graph.
+     *
+     * @param graph     graph where the vertices and edges are added.
+     * @param separator character between the fields of a line, for example ',' or '\t'.
+     */
+    public StructuredGraphLoader(StructuredGraph graph, char separator) {
+        this.graph = graph;
+        this.separator = separator;
+    }
+
+    /**
+     * Finds a vertex loaded by this loader by its external id.
+     *
+     * @param id external id of the vertex in the vertices file.
+     * @return Vertex or null if no vertex was loaded with that id.
+     */
+    public Vertex findVertex(String id) {
+        return vertexById.get(id);
+    }
+
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * Loads a vertices file adding every vertex to the graph.
+     *
+     * @param file vertices file.
+     * @return number of vertices added.
+     * @throws IOException if the file can't be read.
+     */
+    public int loadVertices(Path file) throws IOException {
+        return load(file, new BatchHandler<ParsedVertex[]>() {
+            String[] header;
+
+            @Override
+            public void header(String[] fields) {
+                header = fields;
+            }
+
+            @Override
+            public ParsedVertex[] parse(List<String> lines) {
+                ParsedVertex[] parsed = new ParsedVertex[lines.size()];
+                for (int i = 0; i < parsed.length; i++) {
+                    String[] fields = split(lines.get(i));
+                    if (fields.length < 2 || fields[0].isEmpty() || fields[1].isEmpty())
+                        continue;
+                    HashMap<String, Object> data = new HashMap<>(fields.length * 2);
+                    data.put(header[0], fields[0]);
+                    for (int f = 2; f < fields.length && f < header.length; f++)
+                        if (!fields[f].isEmpty())
+                            data.put(header[f], fields[f]);
+                    parsed[i] = new ParsedVertex(fields[0], canonical(fields[1]), data);
+                }
+                return parsed;
+            }
+
+            @Override
+            public int insert(ParsedVertex[] parsed) {
+                int added = 0;
+                for (ParsedVertex vertex : parsed) {
+                    if (vertex == null || vertexById.containsKey(vertex.id)) {
+                        skippedLines++;
+                        continue;
+                    }
+                    Vertex v = graph.addVertex(vertex.data, vertex.tag);
+                    if (null == v) {
+                        skippedLines++;
+                        continue;
+                    }
+                    vertexById.put(vertex.id, v);
+                    added++;
+                }
+                return added;
+            }
+        });
+    }
+
+    /**
+     * Loads an edges file adding every edge to the graph. The vertices must have been loaded before.
+     *
+     * @param file edges file.
+     * @return number of lines whose edges were added.
+     * @throws IOException if the file can't be read.
+     */
+    public int loadEdges(Path file) throws IOException {
+        return load(file, new BatchHandler<ParsedEdge[]>() {
+            @Override
+            public void header(String[] fields) {
+            }
+
+            @Override
+            public ParsedEdge[] parse(List<String> lines) {
+                ParsedEdge[] parsed = new ParsedEdge[lines.size()];
+                for (int i = 0; i < parsed.length; i++) {
+                    String[] fields = split(lines.get(i));
+                    if (fields.length < 3 || fields[2].isEmpty())
+                        continue;
+                    try {
+                        double weight = fields.length > 3 && !fields[3].isEmpty() ? Double.parseDouble(fields[3]) : 1.0;
+                        boolean bidirectional = fields.length > 4 && Boolean.parseBoolean(fields[4].trim());
+                        parsed[i] = new ParsedEdge(fields[0], fields[1], canonical(fields[2]), weight, bidirectional);
+                    } catch (NumberFormatException ex) {
+                        parsed[i] = null;
+                    }
+                }
+                return parsed;
+            }
+
+            @Override
+            public int insert(ParsedEdge[] parsed) {
+                long[] order = new long[parsed.length];
+                Vertex[] origins = new Vertex[parsed.length];
+                Vertex[] destinations = new Vertex[parsed.length];
+                int count = 0;
+                for (int i = 0; i < parsed.length; i++) {
+                    ParsedEdge edge = parsed[i];
+                    Vertex o = null == edge ? null : vertexById.get(edge.origin);
+                    Vertex d = null == edge ? null : vertexById.get(edge.destination);
+                    if (o == null || d == null) {
+                        skippedLines++;
+                        continue;
+                    }
+                    origins[i] = o;
+                    destinations[i] = d;
+                    order[count++] = (long) o.getId() << 32 | i;
+                }
+                Arrays.sort(order, 0, count);
+                Vertex[] sortedDestinations = new Vertex[count];
+                Comparable<?>[] relationships = new Comparable<?>[count];
+                double[] weights = new double[count];
+                boolean[] bidirectional = new boolean[count];
+                for (int j = 0; j < count; j++) {
+                    int i = (int) order[j];
+                    sortedDestinations[j] = destinations[i];
+                    relationships[j] = parsed[i].relationship;
+                    weights[j] = parsed[i].weight;
+                    bidirectional[j] = parsed[i].bidirectional;
+                }
+                for (int start = 0, end; start < count; start = end) {
+                    Vertex o = origins[(int) order[start]];
+                    end = start + 1;
+                    while (end < count && origins[(int) order[end]] == o)
+                        end++;
+                    graph.addEdgesFrom(o, sortedDestinations, relationships, weights, bidirectional, start, end);
+                }
+                return count;
+            }
+        });
+    }
+
+    /**
+     * Streams a file in batches of lines. Each batch is parsed in the pool and the parsed batches are
+     * inserted in file order by the calling thread, keeping a bounded number of batches in flight.
+     *
+     * @param file    file to load.
+     * @param handler parses and inserts the batches.
+     * @param <P>     type of a parsed batch.
+     * @return number of elements inserted.
+     * @throws IOException if the file can't be read.
+     */
+    private <P> int load(Path file, BatchHandler<P> handler) throws IOException {
+        int inFlight = Math.max(2, pool.getParallelism() * 2);
+        ArrayDeque<CompletableFuture<P>> pending = new ArrayDeque<>();
+        int added = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BufferedReader reader = new BufferedReader(
+                     Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), READ_BUFFER), READ_BUFFER)) {
+            String line = reader.readLine();
+            if (line == null)
+                return 0;
+            String[] header = split(line);
+            for (int i = 0; i < header.length; i++)
+                header[i] = canonical(header[i].trim());
+            handler.header(header);
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                batch.add(line);
+                if (batch.size() == BATCH_SIZE) {
+                    List<String> lines = batch;
+                    pending.add(CompletableFuture.supplyAsync(() -> handler.parse(lines), pool));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                    if (pending.size() >= inFlight)
+                        added += handler.insert(await(pending.poll()));
+                }
+            }
+            if (!batch.isEmpty()) {
+                List<String> lines = batch;
+                pending.add(CompletableFuture.supplyAsync(() -> handler.parse(lines), pool));
+            }
+            while (!pending.isEmpty())
+                added += handler.insert(await(pending.poll()));
+        } finally {
+            for (CompletableFuture<P> future : pending)
+                future.cancel(false);
+        }
+        return added;
+    }
+
+    private <P> P await(CompletableFuture<P> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * Splits a line by the separator without regular expressions.
+     *
+     * @param line line of the file.
+     * @return fields of the line.
+     */
+    private String[] split(String line) {
+        ArrayList<String> fields = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == separator) {
+                fields.add(line.substring(start, i));
+                start = i + 1;
+            }
+        }
+        fields.add(line.substring(start));
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Returns a shared instance of a repeated string (types, relationships and attribute names), so
+     * millions of edges don't keep millions of copies of the same relationship.
+     *
+     * @param value string read from a file.
+     * @return canonical instance of the string.
+     */
+    private String canonical(String value) {
+        String existing = canonical.putIfAbsent(value, value);
+        return null == existing ? value : existing;
+    }
+
+    /**
+     * Parses batches of lines, which may happen in any thread, and inserts them in the graph, which
+     * only happens in the loading thread.
+     *
+     * @param <P> type of a parsed batch.
+     */
+    private interface BatchHandler<P> {
+        void header(String[] fields);
+
+        P parse(List<String> lines);
+
+        int insert(P parsed);
+    }
+
+    private static class ParsedVertex {
+        final String id;
+        final String tag;
+        final HashMap<String, Object> data;
+
+        ParsedVertex(String id, String tag, HashMap<String, Object> data) {
+            this.id = id;
+            this.tag = tag;
+            this.data = data;
+        }
+    }
+
+    private static class ParsedEdge {
+        final String origin;
+        final String destination;
+        final String relationship;
+        final double weight;
+        final boolean bidirectional;
+
+        ParsedEdge(String origin, String destination, String relationship, double weight, boolean bidirectional) {
+            this.origin = origin;
+            this.destination = destination;
+            this.relationship = relationship;
+            this.weight = weight;
+            this.bidirectional = bidirectional;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Edge;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Binary snapshot of a StructuredGraph. The file has the following sections:
+ * <ul>
+ * <li>Header with a magic number, the format version and the epoch of the write-ahead log.</li>
+ * <li>Dictionary with the types and attribute names, which are referenced by index.</li>
+ * <li>Dictionary with the relationships of the edges, also referenced by index.</li>
+ * <li>One section per type with the attributes of its vertices stored by columns.</li>
+ * <li>Blocks with the egress edges of consecutive vertices. Edges are sorted by destination and
+ * stored as variable length deltas, followed by the relationship index and the weight when it
+ * isn't 1.0.</li>
+ * <li>Footer with the offsets of the type sections and edge blocks. Types are referenced by their index
+ * in the dictionary plus one, 0 being the vertices without a type.</li>
+ * </ul>
+ * Vertices are numbered by their position in the snapshot, so a loaded graph has dense ids grouped
+ * by type. Loading maps the file in memory and decodes the type sections and edge blocks in parallel,
+ * while the graph is built in order by the loading thread.
+ */
+class StructuredGraphSnapshot {
+
+    private static final int MAGIC = 0x53475048;
+    private static final int VERSION = 2;
+    private static final int UNTYPED = 0;
+    private static final int BLOCK_VERTICES = 1 << 14;
+    private static final int WEIGHT_ONE = 0;
+    private static final int WEIGHT_NULL = 1;
+    private static final int WEIGHT_VALUE = 2;
+    private static final Double ONE = 1.0;
+
+    private StructuredGraphSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of a graph to a file, replacing it if it exists.
+     *
+     * @param graph graph to save.
+     * @param file  destination file.
+     * @param epoch epoch of the write-ahead log whose records are included in the snapshot.
+     * @throws IOException if the file can't be written or a value isn't serializable.
+     */
+    static void save(StructuredGraph graph, Path file, long epoch) throws IOException {
+        LinkedHashMap<String, List<Vertex>> byTag = new LinkedHashMap<>();
+        for (Vertex v : graph.allVertices())
+            byTag.computeIfAbsent(v.getTag(), t -> new ArrayList<>()).add(v);
+
+        int[] ordinal = new int[graph.vertexIdBound()];
+        LinkedHashMap<String, Integer> strings = new LinkedHashMap<>();
+        LinkedHashMap<Object, Integer> relationships = new LinkedHashMap<>();
+        List<Vertex> ordered = new ArrayList<>(graph.getNumVertices());
+        List<List<String>> keysByTag = new ArrayList<>();
+        for (Map.Entry<String, List<Vertex>> group : byTag.entrySet()) {
+            if (null != group.getKey())
+                strings.putIfAbsent(group.getKey(), strings.size());
+            LinkedHashSet<String> keys = new LinkedHashSet<>();
+            for (Vertex v : group.getValue()) {
+                ordinal[v.id] = ordered.size();
+                ordered.add(v);
+                keys.addAll(v.getProperties().keySet());
+                for (Edge<?, ?> edge : graph.egressOf(v))
+                    relationships.putIfAbsent(edge.relationship, relationships.size());
+            }
+            for (String key : keys)
+                strings.putIfAbsent(key, strings.size());
+            keysByTag.add(new ArrayList<>(keys));
+        }
+
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            BinaryWriter out = new BinaryWriter(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(epoch);
+            out.writeVarInt(strings.size());
+            for (String s : strings.keySet())
+                out.writeString(s);
+            out.writeVarInt(relationships.size());
+            for (Object relationship : relationships.keySet())
+                out.writeValue(relationship);
+
+            long[] tagOffsets = new long[byTag.size()];
+            int t = 0;
+            for (List<Vertex> group : byTag.values()) {
+                List<String> keys = keysByTag.get(t);
+                tagOffsets[t++] = out.position();
+                out.writeVarInt(group.size());
+                out.writeVarInt(keys.size());
+                for (String key : keys)
+                    out.writeVarInt(strings.get(key));
+                for (String key : keys) {
+                    for (Vertex v : group) {
+                        Object value = v.getProperty(key);
+                        if (null == value)
+                            out.writeByte(BinaryWriter.ABSENT);
+                        else
+                            out.writeValue(value);
+                    }
+                }
+            }
+
+            int numBlocks = (ordered.size() + BLOCK_VERTICES - 1) / BLOCK_VERTICES;
+            long[] blockOffsets = new long[numBlocks];
+            int[] blockEdges = new int[numBlocks];
+            List<Edge<?, ?>> edges = new ArrayList<>();
+            for (int b = 0; b < numBlocks; b++) {
+                blockOffsets[b] = out.position();
+                int last = Math.min(ordered.size(), (b + 1) * BLOCK_VERTICES);
+                for (int i = b * BLOCK_VERTICES; i < last; i++) {
+                    edges.clear();
+                    for (Edge<?, ?> edge : graph.egressOf(ordered.get(i)))
+                        if (isSaved(edge.vertex, ordinal, ordered) && relationships.containsKey(edge.relationship))
+                            edges.add(edge);
+                    edges.sort(Comparator.comparingInt(e -> ordinal[e.vertex.id]));
+                    out.writeVarInt(edges.size());
+                    int previous = 0;
+                    for (Edge<?, ?> edge : edges) {
+                        int destination = ordinal[edge.vertex.id];
+                        out.writeVarInt(destination - previous);
+                        previous = destination;
+                        int relationship = relationships.get(edge.relationship) << 2;
+                        if (null == edge.weight) {
+                            out.writeVarInt(relationship | WEIGHT_NULL);
+                        } else if (edge.weight == 1.0) {
+                            out.writeVarInt(relationship | WEIGHT_ONE);
+                        } else {
+                            out.writeVarInt(relationship | WEIGHT_VALUE);
+                            out.writeDouble(edge.weight);
+                        }
+                    }
+                    blockEdges[b] += edges.size();
+                }
+            }
+
+            long footer = out.position();
+            out.writeVarInt(byTag.size());
+            t = 0;
+            int first = 0;
+            for (Map.Entry<String, List<Vertex>> group : byTag.entrySet()) {
+                out.writeVarInt(null == group.getKey() ? UNTYPED : strings.get(group.getKey()) + 1);
+                out.writeLong(tagOffsets[t++]);
+                out.writeVarInt(first);
+                first += group.getValue().size();
+            }
+            out.writeVarInt(numBlocks);
+            for (int b = 0; b < numBlocks; b++) {
+                out.writeLong(blockOffsets[b]);
+                out.writeVarInt(blockEdges[b]);
+            }
+            out.writeLong(footer);
+        }
+    }
+
+    /**
+     * Checks whether a vertex is one of the vertices being saved, which may not be the case for a vertex
+     * added by another thread after the save started.
+     */
+    private static boolean isSaved(Vertex v, int[] ordinal, List<Vertex> ordered) {
+        return v.id < ordinal.length && ordinal[v.id] < ordered.size() && ordered.get(ordinal[v.id]) == v;
+    }
+
+    /**
+     * Reads a graph from a snapshot file. Snapshots of the first version, which had no untyped vertices
+     * and referenced types by their plain index, are read as well.
+     *
+     * @param file       file written by save.
+     * @param concurrent true to load it into a graph that several threads can use at the same time.
+     * @return new graph with the vertices and edges of the snapshot.
+     * @throws IOException if the file can't be read, isn't a snapshot or a vertex can't be added.
+     */
+    static StructuredGraph load(Path file, boolean concurrent) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int inFlight = Math.max(2, pool.getParallelism() * 2);
+        ArrayDeque<CompletableFuture<?>> pending = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            BinaryReader in = new BinaryReader(channel, 0);
+            if (channel.size() < 24 || in.readInt() != MAGIC)
+                throw new StreamCorruptedException("File " + file + " isn't a graph snapshot.");
+            int version = in.readInt();
+            if (version != 1 && version != VERSION)
+                throw new StreamCorruptedException("Unsupported snapshot version " + version);
+            long epoch = in.readLong();
+            String[] strings = new String[in.readVarInt()];
+            for (int i = 0; i < strings.length; i++)
+                strings[i] = in.readString();
+            Comparable<?>[] relationships = new Comparable<?>[in.readVarInt()];
+            for (int i = 0; i < relationships.length; i++)
+                relationships[i] = (Comparable<?>) in.readValue();
+
+            in.seek(channel.size() - 8);
+            in.seek(in.readLong());
+            int numTags = in.readVarInt();
+            String[] tags = new String[numTags];
+            long[] tagOffsets = new long[numTags];
+            int[] tagFirst = new int[numTags];
+            for (int t = 0; t < numTags; t++) {
+                int tag = in.readVarInt();
+                tags[t] = version == 1 ? strings[tag] : tag == UNTYPED ? null : strings[tag - 1];
+                tagOffsets[t] = in.readLong();
+                tagFirst[t] = in.readVarInt();
+            }
+            int numBlocks = in.readVarInt();
+            long[] blockOffsets = new long[numBlocks];
+            int[] blockEdges = new int[numBlocks];
+            for (int b = 0; b < numBlocks; b++) {
+                blockOffsets[b] = in.readLong();
+                blockEdges[b] = in.readVarInt();
+            }
+
+            StructuredGraph graph = new StructuredGraph(concurrent);
+            graph.logEpoch = epoch;
+            List<Vertex> vertices = new ArrayList<>();
+            int submitted = 0;
+            for (int t = 0; t < numTags; t++) {
+                for (; submitted < numTags + numBlocks && pending.size() < inFlight; submitted++)
+                    pending.add(submit(channel, submitted, numTags, tagOffsets, blockOffsets, blockEdges, strings, pool));
+                @SuppressWarnings("unchecked")
+                HashMap<String, Object>[] block = (HashMap<String, Object>[]) await(pending.poll());
+                for (HashMap<String, Object> data : block) {
+                    Vertex v = graph.addVertex(data, tags[t]);
+                    if (null == v)
+                        throw new IOException("Vertex " + data + " of type " + tags[t] + " couldn't be added.");
+                    vertices.add(v);
+                }
+            }
+            for (int b = 0; b < numBlocks; b++) {
+                for (; submitted < numTags + numBlocks && pending.size() < inFlight; submitted++)
+                    pending.add(submit(channel, submitted, numTags, tagOffsets, blockOffsets, blockEdges, strings, pool));
+                EdgeBlock block = (EdgeBlock) await(pending.poll());
+                int v = b * BLOCK_VERTICES;
+                for (int e = 0, i = 0; e < block.destination.length; i++, v++) {
+                    Vertex origin = vertices.get(v);
+                    for (int last = e + block.degree[i]; e < last; e++)
+                        origin.addRelationship(vertices.get(block.destination[e]),
+                                relationships[block.relationship[e]], false, block.weight[e]);
+                }
+            }
+            return graph;
+        } finally {
+            for (CompletableFuture<?> future : pending)
+                future.cancel(false);
+        }
+    }
+
+    /**
+     * Starts decoding a section in the pool: the type sections come first and then the edge blocks.
+     */
+    private static CompletableFuture<?> submit(FileChannel channel, int section, int numTags, long[] tagOffsets,
+                                               long[] blockOffsets, int[] blockEdges, String[] strings,
+                                               ForkJoinPool pool) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (section < numTags)
+                    return readVertices(new BinaryReader(channel, tagOffsets[section]), strings);
+                int b = section - numTags;
+                return readEdges(new BinaryReader(channel, blockOffsets[b]), blockEdges[b]);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, pool);
+    }
+
+    /**
+     * Decodes the attribute columns of a type section into the data of each vertex.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static HashMap<String, Object>[] readVertices(BinaryReader in, String[] strings) throws IOException {
+        HashMap<String, Object>[] data = new HashMap[in.readVarInt()];
+        String[] keys = new String[in.readVarInt()];
+        for (int k = 0; k < keys.length; k++)
+            keys[k] = strings[in.readVarInt()];
+        for (int i = 0; i < data.length; i++)
+            data[i] = new HashMap<>(Math.max(4, keys.length * 2));
+        for (String key : keys) {
+            for (HashMap<String, Object> row : data) {
+                int type = in.readByte();
+                if (type != BinaryWriter.ABSENT)
+                    row.put(key, in.readValue(type));
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Decodes the edges of a block of vertices.
+     */
+    private static EdgeBlock readEdges(BinaryReader in, int numEdges) throws IOException {
+        EdgeBlock block = new EdgeBlock(numEdges);
+        int[] degrees = new int[BLOCK_VERTICES];
+        int e = 0;
+        int i = 0;
+        while (e < numEdges) {
+            int degree = in.readVarInt();
+            degrees[i++] = degree;
+            int destination = 0;
+            for (int last = e + degree; e < last; e++) {
+                destination += in.readVarInt();
+                block.destination[e] = destination;
+                int relationship = in.readVarInt();
+                block.relationship[e] = relationship >>> 2;
+                switch (relationship & 3) {
+                    case WEIGHT_ONE:
+                        block.weight[e] = ONE;
+                        break;
+                    case WEIGHT_VALUE:
+                        block.weight[e] = in.readDouble();
+                        break;
+                    default:
+                        block.weight[e] = null;
+                }
+            }
+        }
+        block.degree = Arrays.copyOf(degrees, i);
+        return block;
+    }
+
+    private static Object await(CompletableFuture<?> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * Edges of consecutive vertices: the degree of each vertex and the destination, relationship index
+     * and weight of its edges one after another.
+     */
+    private static class EdgeBlock {
+        int[] degree;
+        final int[] destination;
+        final int[] relationship;
+        final Double[] weight;
+
+        EdgeBlock(int numEdges) {
+            destination = new int[numEdges];
+            relationship = new int[numEdges];
+            weight = new Double[numEdges];
+        }
+    }
+}
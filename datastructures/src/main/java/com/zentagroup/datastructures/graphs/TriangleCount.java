@@ -0,0 +1,196 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Triangles and clustering coefficients of a Graph, ignoring the direction of the edges, repeated edges
+ * and edges from a vertex to itself.
+ * <p>
+ * The edges are copied to sorted int arrays and every one is kept only in the list of its endpoint of
+ * lower degree (ties by vertex number), so the lists of high degree vertices become short. Each triangle
+ * is then found exactly once as a vertex u, a vertex v in the list of u and a vertex in both lists,
+ * intersecting the two sorted lists with a merge. Vertices are split in ranges counted in parallel.
+ */
+public class TriangleCount {
+
+    private static final int CHUNK = 1024;
+
+    private final int[] degree;
+    private final AtomicLongArray triangles;
+    private final long total;
+
+    private TriangleCount(IntAdjacency adjacency) {
+        int n = adjacency.size();
+        IntAdjacency undirected = undirected(adjacency);
+        degree = new int[n];
+        for (int v = 0; v < n; v++)
+            degree[v] = undirected.degree(v);
+        int[] start = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            int higher = 0;
+            for (int i = undirected.offsets[v]; i < undirected.offsets[v + 1]; i++)
+                if (before(v, undirected.targets[i]))
+                    higher++;
+            start[v + 1] = start[v] + higher;
+        }
+        int[] oriented = new int[start[n]];
+        for (int v = 0, j = 0; v < n; v++)
+            for (int i = undirected.offsets[v]; i < undirected.offsets[v + 1]; i++)
+                if (before(v, undirected.targets[i]))
+                    oriented[j++] = undirected.targets[i];
+        triangles = new AtomicLongArray(n);
+        total = IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel().mapToLong(c -> {
+            long found = 0;
+            for (int u = c * CHUNK, end = Math.min(n, u + CHUNK); u < end; u++) {
+                for (int i = start[u]; i < start[u + 1]; i++) {
+                    int v = oriented[i];
+                    int a = start[u];
+                    int b = start[v];
+                    while (a < start[u + 1] && b < start[v + 1]) {
+                        if (oriented[a] < oriented[b]) {
+                            a++;
+                        } else if (oriented[a] > oriented[b]) {
+                            b++;
+                        } else {
+                            triangles.incrementAndGet(u);
+                            triangles.incrementAndGet(v);
+                            triangles.incrementAndGet(oriented[a]);
+                            found++;
+                            a++;
+                            b++;
+                        }
+                    }
+                }
+            }
+            return found;
+        }).sum();
+    }
+
+    /**
+     * Counts the triangles of a Graph.
+     *
+     * @param graph graph.
+     * @return triangle count.
+     */
+    public static TriangleCount of(Graph graph) {
+        return new TriangleCount(IntAdjacency.of(graph));
+    }
+
+    /**
+     * Whether the edge between two vertices is kept in the list of the first one.
+     */
+    private boolean before(int u, int v) {
+        return degree[u] < degree[v] || degree[u] == degree[v] && u < v;
+    }
+
+    /**
+     * Both directions of every edge, without repeated edges and self loops, each list sorted.
+     */
+    private static IntAdjacency undirected(IntAdjacency adjacency) {
+        int n = adjacency.size();
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            for (int i = adjacency.offsets[v]; i < adjacency.offsets[v + 1]; i++) {
+                if (adjacency.targets[i] != v) {
+                    offsets[v + 1]++;
+                    offsets[adjacency.targets[i] + 1]++;
+                }
+            }
+        }
+        for (int v = 0; v < n; v++)
+            offsets[v + 1] += offsets[v];
+        int[] targets = new int[offsets[n]];
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (int v = 0; v < n; v++) {
+            for (int i = adjacency.offsets[v]; i < adjacency.offsets[v + 1]; i++) {
+                int w = adjacency.targets[i];
+                if (w != v) {
+                    targets[fill[v]++] = w;
+                    targets[fill[w]++] = v;
+                }
+            }
+        }
+        int[] unique = new int[n];
+        IntStream.range(0, n).parallel().forEach(v -> {
+            Arrays.sort(targets, offsets[v], offsets[v + 1]);
+            int size = 0;
+            for (int i = offsets[v]; i < offsets[v + 1]; i++)
+                if (size == 0 || targets[offsets[v] + size - 1] != targets[i])
+                    targets[offsets[v] + size++] = targets[i];
+            unique[v] = size;
+        });
+        int[] compactOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++)
+            compactOffsets[v + 1] = compactOffsets[v] + unique[v];
+        int[] compact = new int[compactOffsets[n]];
+        for (int v = 0; v < n; v++)
+            System.arraycopy(targets, offsets[v], compact, compactOffsets[v], unique[v]);
+        return IntAdjacency.of(compactOffsets, compact);
+    }
+
+    /**
+     * Number of triangles of the graph.
+     *
+     * @return triangles.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Number of triangles a vertex is part of.
+     *
+     * @param v vertex.
+     * @return triangles of the vertex.
+     */
+    public long getTriangles(int v) {
+        return triangles.get(v);
+    }
+
+    /**
+     * Number of distinct neighbors of a vertex, ignoring the direction of the edges.
+     *
+     * @param v vertex.
+     * @return degree.
+     */
+    public int getDegree(int v) {
+        return degree[v];
+    }
+
+    /**
+     * Local clustering coefficient of a vertex: the fraction of the pairs of its neighbors that are joined
+     * by an edge.
+     *
+     * @param v vertex.
+     * @return coefficient between 0 and 1, 0 for vertices with less than two neighbors.
+     */
+    public double clusteringCoefficient(int v) {
+        long pairs = (long) degree[v] * (degree[v] - 1) / 2;
+        return pairs == 0 ? 0 : (double) triangles.get(v) / pairs;
+    }
+
+    /**
+     * Average of the local clustering coefficients of every vertex.
+     *
+     * @return average clustering coefficient.
+     */
+    public double averageClusteringCoefficient() {
+        int n = degree.length;
+        return n == 0 ? 0 : IntStream.range(0, n).parallel().mapToDouble(this::clusteringCoefficient).sum() / n;
+    }
+
+    /**
+     * Global clustering coefficient (transitivity): three times the triangles over the pairs of edges
+     * sharing a vertex.
+     *
+     * @return global clustering coefficient.
+     */
+    public double globalClusteringCoefficient() {
+        long pairs = 0;
+        for (int d : degree)
+            pairs += (long) d * (d - 1) / 2;
+        return pairs == 0 ? 0 : 3.0 * total / pairs;
+    }
+}
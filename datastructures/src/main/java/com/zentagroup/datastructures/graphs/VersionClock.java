@@ -0,0 +1,46 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Hands out increasing versions to the writes of a graph and keeps track of the ones still being applied.
+ * The stable version is the latest one such that every write with that version or a previous one is
+ * complete, so a reader that only looks at versions up to it never sees half of a write.
+ */
+class VersionClock {
+
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private long clock;
+
+    /**
+     * Starts a write.
+     *
+     * @return version of the write.
+     */
+    synchronized long begin() {
+        long version = ++clock;
+        inFlight.add(version);
+        return version;
+    }
+
+    /**
+     * Marks a write as complete.
+     *
+     * @param version version returned by begin.
+     */
+    void end(long version) {
+        inFlight.remove(version);
+    }
+
+    /**
+     * Latest version whose writes, and the writes of every previous version, are complete. It never
+     * decreases. The oldest write in flight is read in a single call, as end doesn't take the lock and
+     * can remove it at any moment.
+     *
+     * @return stable version.
+     */
+    synchronized long stable() {
+        Long first = inFlight.ceiling(Long.MIN_VALUE);
+        return null == first ? clock : first - 1;
+    }
+}
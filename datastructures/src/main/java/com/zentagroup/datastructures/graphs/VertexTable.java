@@ -0,0 +1,99 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Vertices of a graph indexed by id. Ids are handed out by an atomic counter and the vertices are
+ * kept in fixed size segments created on demand, so threads adding vertices never copy or lock the
+ * table and readers see every vertex whose insertion completed.
+ */
+class VertexTable {
+
+    private static final int SEGMENT_BITS = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int MAX_SEGMENTS = 1 << (31 - SEGMENT_BITS);
+
+    private final AtomicInteger nextId = new AtomicInteger();
+    private volatile AtomicReferenceArray<AtomicReferenceArray<Vertex>> segments = new AtomicReferenceArray<>(16);
+
+    /**
+     * Gives the next id to a vertex and stores it.
+     *
+     * @param v vertex without id.
+     * @return id given to the vertex.
+     */
+    int add(Vertex v) {
+        int id = nextId.getAndIncrement();
+        segment(id >>> SEGMENT_BITS).set(id & (SEGMENT_SIZE - 1), v);
+        return id;
+    }
+
+    /**
+     * Finds a vertex by id.
+     *
+     * @param id vertex id.
+     * @return vertex or null if the id wasn't given, the vertex was removed or it's still being added.
+     */
+    Vertex get(int id) {
+        if (id < 0 || id >= nextId.get())
+            return null;
+        AtomicReferenceArray<AtomicReferenceArray<Vertex>> table = segments;
+        int s = id >>> SEGMENT_BITS;
+        AtomicReferenceArray<Vertex> segment = s < table.length() ? table.get(s) : null;
+        return null == segment ? null : segment.get(id & (SEGMENT_SIZE - 1));
+    }
+
+    void remove(int id) {
+        AtomicReferenceArray<Vertex> segment = segments.get(id >>> SEGMENT_BITS);
+        segment.set(id & (SEGMENT_SIZE - 1), null);
+    }
+
+    /**
+     * Upper bound of the ids given so far.
+     *
+     * @return greatest id plus one.
+     */
+    int bound() {
+        return nextId.get();
+    }
+
+    private AtomicReferenceArray<Vertex> segment(int s) {
+        AtomicReferenceArray<AtomicReferenceArray<Vertex>> table = segments;
+        if (s >= table.length())
+            table = grow(s);
+        AtomicReferenceArray<Vertex> segment = table.get(s);
+        if (null == segment) {
+            table.compareAndSet(s, null, new AtomicReferenceArray<>(SEGMENT_SIZE));
+            segment = table.get(s);
+        }
+        return segment;
+    }
+
+    /**
+     * Replaces the segment directory by a bigger one. Only the directory is copied, and it's done under
+     * a lock so segments created meanwhile aren't lost.
+     */
+    private synchronized AtomicReferenceArray<AtomicReferenceArray<Vertex>> grow(int s) {
+        AtomicReferenceArray<AtomicReferenceArray<Vertex>> table = segments;
+        if (s < table.length())
+            return table;
+        if (s >= MAX_SEGMENTS)
+            throw new IllegalStateException("Too many vertices");
+        int length = Math.min(MAX_SEGMENTS, Math.max(s + 1, table.length() * 2));
+        AtomicReferenceArray<AtomicReferenceArray<Vertex>> bigger = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < table.length(); i++) {
+            AtomicReferenceArray<Vertex> segment = table.get(i);
+            if (null == segment) {
+                segment = new AtomicReferenceArray<>(SEGMENT_SIZE);
+                if (!table.compareAndSet(i, null, segment))
+                    segment = table.get(i);
+            }
+            bigger.set(i, segment);
+        }
+        segments = bigger;
+        return bigger;
+    }
+}
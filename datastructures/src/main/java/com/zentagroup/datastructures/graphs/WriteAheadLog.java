@@ -0,0 +1,539 @@
+package com.zentagroup.datastructures.graphs;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of the mutations of a StructuredGraph: addVertex, addEdge, deleteVertex and deleteEdge.
+ * Together with a snapshot it allows rebuilding the graph after a restart. Edges added directly with
+ * Vertex.addRelationship, like the ones of StructuredGraphLoader, aren't logged, so a checkpoint should
+ * follow them.
+ * <p>
+ * Each record is stored as its length, a CRC32 of its content and the content itself. Records are
+ * appended to a buffer in memory and written to the file in batches, so a single fsync makes durable
+ * every record appended while the previous batch was being written (group commit). How long an append
+ * waits depends on the SyncPolicy.
+ * <p>
+ * The log starts with an epoch that matches the snapshot it applies to. StructuredGraph.checkpoint saves
+ * a snapshot with the next epoch and then resets the log, so if the process stops between both steps
+ * the old records are recognised as already included in the snapshot.
+ * <pre>
+ * StructuredGraph graph = Files.exists(snapshot) ? StructuredGraph.load(snapshot) : new StructuredGraph();
+ * WriteAheadLog log = WriteAheadLog.open(logFile, WriteAheadLog.SyncPolicy.INTERVAL);
+ * log.attach(graph);
+ * ...
+ * graph.checkpoint(snapshot);
+ * log.close();
+ * </pre>
+ */
+public class WriteAheadLog implements Closeable {
+
+    /**
+     * When appended records are forced to the storage device.
+     */
+    public enum SyncPolicy {
+        /**
+         * Every mutation waits until its record is forced to disk. Concurrent mutations share the fsync.
+         */
+        ALWAYS,
+        /**
+         * Appends return at once and a background thread forces the log periodically, so a crash
+         * loses at most the last interval.
+         */
+        INTERVAL,
+        /**
+         * Records are written to the file but never forced; the operating system decides when.
+         */
+        NONE
+    }
+
+    private static final int MAGIC = 0x5357414C;
+    private static final int HEADER = 12;
+    private static final int RECORD_HEADER = 8;
+    private static final int FLUSH_THRESHOLD = 1 << 20;
+    private static final long DEFAULT_INTERVAL = 10;
+
+    private static final int ADD_VERTEX = 1;
+    private static final int ADD_EDGE = 2;
+    private static final int DELETE_VERTEX = 3;
+    private static final int DELETE_EDGE = 4;
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final Thread syncThread;
+    private ByteBuffer active = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+    private long epoch;
+    private long appended;
+    private long written;
+    private long durable;
+    private boolean flushing;
+    private boolean closed;
+    private IOException failure;
+
+    private WriteAheadLog(FileChannel channel, SyncPolicy policy, long interval) throws IOException {
+        this.channel = channel;
+        this.policy = policy;
+        recover();
+        if (policy == SyncPolicy.INTERVAL) {
+            syncThread = new Thread(() -> syncPeriodically(interval), "write-ahead-log-sync");
+            syncThread.setDaemon(true);
+            syncThread.start();
+        } else {
+            syncThread = null;
+        }
+    }
+
+    /**
+     * Opens or creates a log. A torn record at the end, left by a crash in the middle of a write,
+     * is cut off.
+     *
+     * @param file   log file.
+     * @param policy sync policy of the appends.
+     * @return open log.
+     * @throws IOException if the file can't be opened or isn't a log.
+     */
+    public static WriteAheadLog open(Path file, SyncPolicy policy) throws IOException {
+        return open(file, policy, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Opens or creates a log.
+     *
+     * @param file     log file.
+     * @param policy   sync policy of the appends.
+     * @param interval milliseconds between syncs with the INTERVAL policy.
+     * @return open log.
+     * @throws IOException if the file can't be opened or isn't a log.
+     */
+    public static WriteAheadLog open(Path file, SyncPolicy policy, long interval) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            return new WriteAheadLog(channel, policy, interval);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Replays the records of the log over a graph loaded from the matching snapshot, or over an empty
+     * graph if there's no snapshot, and from then on logs the mutations of the graph.
+     *
+     * @param graph graph to attach the log to.
+     * @return number of records replayed.
+     * @throws IOException if the log can't be read or belongs to a newer snapshot than the graph.
+     */
+    public int attach(StructuredGraph graph) throws IOException {
+        if (graph.log != null)
+            throw new IllegalStateException("The graph already has a write-ahead log.");
+        int replayed = 0;
+        if (epoch > graph.logEpoch)
+            throw new StreamCorruptedException("The log belongs to snapshot " + epoch
+                    + " but the graph was loaded from snapshot " + graph.logEpoch);
+        if (epoch < graph.logEpoch)
+            reset(graph.logEpoch);
+        else
+            replayed = replay(graph);
+        graph.log = this;
+        return replayed;
+    }
+
+    /**
+     * Detaches the log from a graph, which stops logging its mutations.
+     *
+     * @param graph graph the log is attached to.
+     */
+    public void detach(StructuredGraph graph) {
+        if (graph.log == this)
+            graph.log = null;
+    }
+
+    long logAddVertex(HashMap<String, Object> data, String tag) {
+        try {
+            Record out = new Record(ADD_VERTEX);
+            writeVertex(out, data, tag);
+            return append(out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    long logAddEdge(HashMap<String, Object> origin, String tagOrigin, HashMap<String, Object> destination,
+                    String tagDestination, Comparable<?> relationship, boolean isBidirectional, Double weight) {
+        try {
+            Record out = new Record(ADD_EDGE);
+            writeVertex(out, origin, tagOrigin);
+            writeVertex(out, destination, tagDestination);
+            out.writeValue(relationship);
+            out.writeByte(isBidirectional ? 1 : 0);
+            out.writeValue(weight);
+            return append(out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    long logDeleteVertex(HashMap<String, Object> data, String tag) {
+        try {
+            Record out = new Record(DELETE_VERTEX);
+            writeVertex(out, data, tag);
+            return append(out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    long logDeleteEdge(HashMap<String, Object> origin, String oTag, HashMap<String, Object> destination, String dTag) {
+        try {
+            Record out = new Record(DELETE_EDGE);
+            writeVertex(out, origin, oTag);
+            writeVertex(out, destination, dTag);
+            return append(out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes and forces every record appended so far, whatever the sync policy.
+     *
+     * @throws IOException if the log can't be written.
+     */
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            flush(appended, true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every record and starts a new epoch. Called once a snapshot with that epoch is saved.
+     *
+     * @param newEpoch epoch of the snapshot that includes every record of the log.
+     * @throws IOException if the log can't be written.
+     */
+    void reset(long newEpoch) throws IOException {
+        lock.lock();
+        try {
+            flush(appended, false);
+            channel.truncate(HEADER);
+            writeHeader(newEpoch);
+            channel.force(true);
+            channel.position(HEADER);
+            epoch = newEpoch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and forces the pending records and closes the file.
+     *
+     * @throws IOException if the pending records can't be written.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (syncThread != null) {
+            syncThread.interrupt();
+            try {
+                syncThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try {
+            flush(appended, true);
+        } finally {
+            lock.unlock();
+            channel.close();
+        }
+    }
+
+    private void writeVertex(BinaryWriter out, HashMap<String, Object> data, String tag) throws IOException {
+        out.writeValue(tag);
+        if (data == null) {
+            out.writeVarInt(0);
+            return;
+        }
+        out.writeVarInt(data.size() + 1);
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            out.writeValue(entry.getKey());
+            out.writeValue(entry.getValue());
+        }
+    }
+
+    private HashMap<String, Object> readData(BinaryReader in) throws IOException {
+        int size = in.readVarInt() - 1;
+        if (size < 0)
+            return null;
+        HashMap<String, Object> data = new HashMap<>(Math.max(4, size * 2));
+        for (int i = 0; i < size; i++)
+            data.put((String) in.readValue(), in.readValue());
+        return data;
+    }
+
+    /**
+     * Waits until a record is durable as the sync policy requires: forced to disk with ALWAYS, and
+     * nothing with the other policies. The graph calls it after releasing its locks, so other threads
+     * keep mutating the graph while the record is forced; the order of the records was already fixed
+     * by append.
+     *
+     * @param sequence number of the record, returned by one of the log methods.
+     */
+    void awaitDurable(long sequence) {
+        if (policy != SyncPolicy.ALWAYS)
+            return;
+        lock.lock();
+        try {
+            flush(sequence, true);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends an encoded record to the buffer, writing the buffer when it's full. It doesn't wait for
+     * the record to be forced; see awaitDurable.
+     *
+     * @param out encoded record.
+     * @return sequence number of the record.
+     */
+    private long append(Record out) throws IOException {
+        byte[] payload = out.bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        lock.lock();
+        try {
+            if (closed)
+                throw new IOException("The write-ahead log is closed.");
+            if (failure != null)
+                throw failure;
+            if (active.remaining() < RECORD_HEADER + payload.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(active.capacity() * 2, active.position() + RECORD_HEADER + payload.length));
+                active.flip();
+                bigger.put(active);
+                active = bigger;
+            }
+            active.putInt(payload.length);
+            active.putInt((int) crc.getValue());
+            active.put(payload);
+            long sequence = ++appended;
+            if (active.position() >= FLUSH_THRESHOLD)
+                flush(sequence, false);
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes sure the records up to a sequence number are written, and forced if requested. Only one
+     * thread writes at a time, without holding the lock, while the others keep appending to the other
+     * buffer. A thread that finds a write in progress waits for it and then writes everything appended
+     * meanwhile, so many records share the same write and fsync. Must be called holding the lock.
+     *
+     * @param sequence number of the last record that must be written.
+     * @param force    whether the records must also be forced to disk.
+     */
+    private void flush(long sequence, boolean force) throws IOException {
+        while (force ? durable < sequence : written < sequence) {
+            if (failure != null)
+                throw failure;
+            if (flushing) {
+                flushed.awaitUninterruptibly();
+                continue;
+            }
+            flushing = true;
+            long upTo = appended;
+            ByteBuffer batch = active;
+            active = spare;
+            lock.unlock();
+            try {
+                batch.flip();
+                while (batch.hasRemaining())
+                    channel.write(batch);
+                if (force)
+                    channel.force(false);
+            } catch (IOException ex) {
+                failure = ex;
+            } finally {
+                lock.lock();
+                batch.clear();
+                spare = batch;
+                flushing = false;
+                flushed.signalAll();
+            }
+            if (failure == null) {
+                written = upTo;
+                if (force)
+                    durable = upTo;
+            }
+        }
+    }
+
+    private void syncPeriodically(long interval) {
+        while (true) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            lock.lock();
+            try {
+                if (closed)
+                    return;
+                flush(appended, true);
+            } catch (IOException ex) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads the header of the log, creating it if the file is empty, and finds the end of the last
+     * complete record, cutting off anything after it.
+     */
+    private void recover() throws IOException {
+        long size = channel.size();
+        if (size < HEADER) {
+            channel.truncate(0);
+            writeHeader(0);
+            channel.force(true);
+            channel.position(HEADER);
+            return;
+        }
+        BinaryReader in = new BinaryReader(channel, 0);
+        if (in.readInt() != MAGIC)
+            throw new StreamCorruptedException("The file isn't a write-ahead log.");
+        epoch = in.readLong();
+        long end = HEADER;
+        while (readRecord(in, size) != null)
+            end = in.position();
+        if (end < size) {
+            channel.truncate(end);
+            channel.force(true);
+        }
+        channel.position(end);
+    }
+
+    /**
+     * Applies every record of the log to a graph.
+     */
+    private int replay(StructuredGraph graph) throws IOException {
+        long size = channel.size();
+        BinaryReader in = new BinaryReader(channel, HEADER);
+        int replayed = 0;
+        byte[] payload;
+        while ((payload = readRecord(in, size)) != null) {
+            BinaryReader record = new BinaryReader(ByteBuffer.wrap(payload));
+            switch (record.readByte()) {
+                case ADD_VERTEX: {
+                    String tag = (String) record.readValue();
+                    graph.addVertex(readData(record), tag);
+                    break;
+                }
+                case ADD_EDGE: {
+                    String tagOrigin = (String) record.readValue();
+                    HashMap<String, Object> origin = readData(record);
+                    String tagDestination = (String) record.readValue();
+                    HashMap<String, Object> destination = readData(record);
+                    Comparable<?> relationship = (Comparable<?>) record.readValue();
+                    boolean isBidirectional = record.readByte() != 0;
+                    graph.addEdge(origin, tagOrigin, destination, tagDestination, relationship, isBidirectional,
+                            (Double) record.readValue());
+                    break;
+                }
+                case DELETE_VERTEX: {
+                    String tag = (String) record.readValue();
+                    graph.deleteVertex(readData(record), tag);
+                    break;
+                }
+                case DELETE_EDGE: {
+                    String oTag = (String) record.readValue();
+                    HashMap<String, Object> origin = readData(record);
+                    String dTag = (String) record.readValue();
+                    graph.deleteEdge(origin, oTag, readData(record), dTag);
+                    break;
+                }
+                default:
+                    throw new StreamCorruptedException("Unknown record type in the write-ahead log.");
+            }
+            replayed++;
+        }
+        return replayed;
+    }
+
+    /**
+     * Reads the next record checking its length and CRC.
+     *
+     * @return content of the record or null if there are no more complete records.
+     */
+    private byte[] readRecord(BinaryReader in, long size) throws IOException {
+        if (in.position() + RECORD_HEADER > size)
+            return null;
+        int length = in.readInt();
+        int crc = in.readInt();
+        if (length < 0 || in.position() + length > size)
+            return null;
+        byte[] payload = in.readBytes(length);
+        CRC32 check = new CRC32();
+        check.update(payload, 0, payload.length);
+        return (int) check.getValue() == crc ? payload : null;
+    }
+
+    /**
+     * Record being encoded in memory before it's appended.
+     */
+    private static class Record extends BinaryWriter {
+        final ByteArrayOutputStream bytes;
+
+        Record(int type) throws IOException {
+            this(new ByteArrayOutputStream(64));
+            writeByte(type);
+        }
+
+        private Record(ByteArrayOutputStream bytes) {
+            super(bytes);
+            this.bytes = bytes;
+        }
+    }
+
+    private void writeHeader(long newEpoch) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putLong(newEpoch).flip();
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+    }
+}
@@ -0,0 +1,115 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Edge;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DynamicShortestPathsTest {
+
+    private static HashMap<String, Object> data(int id) {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        return data;
+    }
+
+    /**
+     * Distances from the source by Bellman-Ford, indexed by vertex id.
+     */
+    private static double[] reference(StructuredGraph graph, Vertex source, String relationship) {
+        double[] distance = new double[graph.vertexIdBound()];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        distance[source.getId()] = 0;
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            for (int i = 0; i < distance.length; i++) {
+                Vertex v = graph.findVertexById(i);
+                if (null == v || distance[i] == Double.POSITIVE_INFINITY)
+                    continue;
+                for (Edge<?, ?> edge : graph.egressOf(v)) {
+                    int to = edge.getVertex().getId();
+                    if ((null == relationship || relationship.equals(edge.getRelationship()))
+                            && distance[i] + edge.cost() < distance[to]) {
+                        distance[to] = distance[i] + edge.cost();
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return distance;
+    }
+
+    private static void assertDistances(StructuredGraph graph, DynamicShortestPaths paths, String relationship) {
+        double[] expected = reference(graph, paths.getSource(), relationship);
+        for (int i = 0; i < expected.length; i++) {
+            Vertex v = graph.findVertexById(i);
+            if (null == v)
+                continue;
+            assertEquals("Distance to " + v.getProperty("id"), expected[i], paths.distanceTo(v), 0.0);
+            List<Vertex> path = paths.pathTo(v);
+            if (expected[i] == Double.POSITIVE_INFINITY) {
+                assertTrue(path.isEmpty());
+            } else {
+                assertSame(paths.getSource(), path.get(0));
+                assertSame(v, path.get(path.size() - 1));
+            }
+        }
+    }
+
+    @Test
+    public void distancesFollowAddedAndDeletedEdges() {
+        StructuredGraph graph = new StructuredGraph();
+        for (int i = 0; i < 5; i++)
+            graph.addVertex(data(i), "V");
+        graph.addEdge(data(0), "V", data(1), "V", "road", false, 4.0);
+        graph.addEdge(data(1), "V", data(2), "V", "road", false, 1.0);
+        try (DynamicShortestPaths paths = graph.trackShortestPaths(data(0), "V", null)) {
+            Vertex two = graph.findVertex(data(2), "V");
+            assertEquals(5.0, paths.distanceTo(two), 0.0);
+            graph.addEdge(data(0), "V", data(2), "V", "road", false, 2.0);
+            assertEquals(2.0, paths.distanceTo(two), 0.0);
+            graph.deleteEdge(data(0), "V", data(2), "V");
+            assertEquals(5.0, paths.distanceTo(two), 0.0);
+            graph.deleteVertex(data(1), "V");
+            assertEquals(Double.POSITIVE_INFINITY, paths.distanceTo(two), 0.0);
+            assertTrue(paths.pathTo(two).isEmpty());
+        }
+    }
+
+    @Test
+    public void randomChangesMatchAFullSearch() {
+        Random random = new Random(13);
+        for (int round = 0; round < 20; round++) {
+            int n = 20 + random.nextInt(30);
+            StructuredGraph graph = new StructuredGraph();
+            for (int i = 0; i < n; i++)
+                graph.addVertex(data(i), "V");
+            for (int i = 0; i < 2 * n; i++)
+                graph.addEdge(data(random.nextInt(n)), "V", data(random.nextInt(n)), "V",
+                        random.nextBoolean() ? "a" : "b", random.nextInt(5) == 0, 1.0 + random.nextInt(9));
+            String relationship = round % 3 == 0 ? "a" : null;
+            try (DynamicShortestPaths paths = graph.trackShortestPaths(data(0), "V", relationship)) {
+                for (int step = 0; step < 100; step++) {
+                    int x = random.nextInt(n);
+                    int y = random.nextInt(n);
+                    if (random.nextInt(10) < 5) {
+                        if (null != graph.findVertex(data(x), "V") && null != graph.findVertex(data(y), "V"))
+                            graph.addEdge(data(x), "V", data(y), "V", random.nextBoolean() ? "a" : "b",
+                                    random.nextInt(5) == 0, 1.0 + random.nextInt(9));
+                    } else if (random.nextInt(20) > 0) {
+                        graph.deleteEdge(data(x), "V", data(y), "V");
+                    } else if (x != 0) {
+                        graph.deleteVertex(data(x), "V");
+                    }
+                    assertDistances(graph, paths, relationship);
+                }
+            }
+        }
+    }
+}
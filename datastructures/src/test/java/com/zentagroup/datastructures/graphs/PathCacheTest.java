@@ -0,0 +1,97 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PathCacheTest {
+
+    private StructuredGraph graph;
+    private PathCache cache;
+
+    private static HashMap<String, Object> data(int id) {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        return data;
+    }
+
+    private List<Object> path(int from, int to) {
+        List<Object> ids = new ArrayList<>();
+        for (Vertex v : graph.findShortestPath(data(from), "V", data(to), "V"))
+            ids.add(v.getProperty("id"));
+        return ids;
+    }
+
+    private static List<Object> ids(Object... ids) {
+        List<Object> list = new ArrayList<>();
+        for (Object id : ids)
+            list.add(id);
+        return list;
+    }
+
+    @Before
+    public void setUp() {
+        graph = new StructuredGraph(true);
+        graph.setPathCache(16);
+        cache = graph.getPathCache();
+        for (int i = 0; i < 4; i++)
+            graph.addEdge(data(i), "V", data(i + 1), "V", "road", false, 1.0);
+        graph.addEdge(data(10), "V", data(11), "V", "road", false, 1.0);
+    }
+
+    @Test
+    public void repeatedSearchIsAHit() {
+        assertEquals(ids(0, 1, 2, 3, 4), path(0, 4));
+        assertEquals(ids(0, 1, 2, 3, 4), path(0, 4));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void shorterEdgeFromASettledVertexInvalidates() {
+        path(0, 4);
+        graph.addEdge(data(1), "V", data(4), "V", "road", false, 1.5);
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(ids(0, 1, 4), path(0, 4));
+    }
+
+    @Test
+    public void unrelatedChangesKeepTheEntry() {
+        path(0, 4);
+        graph.addEdge(data(1), "V", data(4), "V", "road", false, 10.0);
+        graph.addEdge(data(10), "V", data(0), "V", "road", false, 1.0);
+        graph.deleteEdge(data(10), "V", data(11), "V");
+        assertEquals(0, cache.getInvalidations());
+        path(0, 4);
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void deletingAStepOfThePathInvalidates() {
+        graph.addEdge(data(0), "V", data(4), "V", "road", false, 5.0);
+        assertEquals(ids(0, 1, 2, 3, 4), path(0, 4));
+        graph.deleteEdge(data(2), "V", data(3), "V");
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(ids(0, 4), path(0, 4));
+        graph.deleteVertex(data(4), "V");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void edgesWithoutWeightCountAsOne() {
+        graph.addEdge(data(20), "V", data(21), "V", "road", false, null);
+        graph.addEdge(data(21), "V", data(22), "V", "road", false, null);
+        assertEquals(ids(20, 21, 22), path(20, 22));
+        graph.addEdge(data(20), "V", data(22), "V", "road", false, 1.5);
+        assertEquals(ids(20, 22), path(20, 22));
+        graph.addEdge(data(20), "V", data(23), "V", "road", false, null);
+        graph.addEdge(data(23), "V", data(22), "V", "road", false, 2.0);
+        assertEquals(ids(20, 22), path(20, 22));
+    }
+}
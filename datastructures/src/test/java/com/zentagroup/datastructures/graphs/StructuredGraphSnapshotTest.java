@@ -0,0 +1,93 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class StructuredGraphSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static HashMap<String, Object> data(int id) {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        data.put("name", "n" + id);
+        if (id % 3 == 0)
+            data.put("even", id % 2 == 0);
+        return data;
+    }
+
+    private static StructuredGraph sample() {
+        StructuredGraph graph = new StructuredGraph();
+        for (int i = 0; i < 200; i++)
+            graph.addVertex(data(i), i % 2 == 0 ? "Person" : "City");
+        for (int i = 0; i < 5; i++)
+            graph.addVertex(data(1000 + i), null);
+        for (int i = 0; i < 199; i++)
+            graph.addEdge(data(i), i % 2 == 0 ? "Person" : "City", data(i + 1), i % 2 == 0 ? "City" : "Person",
+                    i % 3 == 0 ? "knows" : "lives in", i % 5 == 0, 1.0 + i);
+        graph.addEdge(data(1000), null, data(0), "Person", "knows", false, null);
+        return graph;
+    }
+
+    private static Set<Object> neighborIds(StructuredGraph graph, HashMap<String, Object> data, String tag) {
+        Set<Object> ids = new HashSet<>();
+        for (Vertex v : graph.findNeighbors(data, tag))
+            ids.add(v.getProperty("id"));
+        return ids;
+    }
+
+    private void assertSameGraph(StructuredGraph expected, StructuredGraph actual) {
+        assertEquals(expected.getNumVertices(), actual.getNumVertices());
+        assertEquals(expected.getNumEdges(), actual.getNumEdges());
+        for (int i = 0; i < 200; i++) {
+            String tag = i % 2 == 0 ? "Person" : "City";
+            assertNotNull(actual.findVertex(data(i), tag));
+            assertEquals(neighborIds(expected, data(i), tag), neighborIds(actual, data(i), tag));
+        }
+        Vertex untyped = actual.findVertex(data(1000), null);
+        assertNotNull(untyped);
+        assertNull(untyped.getTag());
+        assertEquals(neighborIds(expected, data(1000), null), neighborIds(actual, data(1000), null));
+    }
+
+    @Test
+    public void saveAndLoadRoundTrip() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.bin");
+        StructuredGraph graph = sample();
+        graph.save(file);
+        assertSameGraph(graph, StructuredGraph.load(file));
+    }
+
+    @Test
+    public void loadIntoAConcurrentGraph() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.bin");
+        StructuredGraph graph = sample();
+        graph.save(file);
+        StructuredGraph loaded = StructuredGraph.load(file, true);
+        assertSameGraph(graph, loaded);
+        assertNotNull(loaded.addVertex(data(5000), "Person"));
+    }
+
+    @Test
+    public void deletedVerticesAreNotSaved() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.bin");
+        StructuredGraph graph = sample();
+        graph.deleteVertex(data(10), "Person");
+        graph.save(file);
+        StructuredGraph loaded = StructuredGraph.load(file);
+        assertEquals(graph.getNumVertices(), loaded.getNumVertices());
+        assertEquals(graph.getNumEdges(), loaded.getNumEdges());
+        assertNull(loaded.findVertex(data(10), "Person"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.zentagroup.datastructures.graphs;
+
+import com.zentagroup.datastructures.graphs.StructuredGraph.TraversalOrder;
+import com.zentagroup.datastructures.graphs.StructuredGraph.Vertex;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class StructuredGraphTest {
+
+    private static HashMap<String, Object> data(int id) {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        return data;
+    }
+
+    private static Set<Object> reached(StructuredGraph graph, TraversalOrder order, int maxDepth) {
+        return graph.stream(data(0), "V", order, maxDepth).map(v -> v.getProperty("id")).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void depthFirstWithMaxDepthReachesTheSameVerticesAsBreadthFirst() {
+        StructuredGraph graph = new StructuredGraph();
+        graph.addEdge(data(0), "V", data(1), "V", "r", false, 1.0);
+        graph.addEdge(data(1), "V", data(2), "V", "r", false, 1.0);
+        graph.addEdge(data(2), "V", data(3), "V", "r", false, 1.0);
+        graph.addEdge(data(0), "V", data(2), "V", "r", false, 2.0);
+        for (int depth = 0; depth <= 3; depth++)
+            assertEquals(reached(graph, TraversalOrder.BREADTH_FIRST, depth),
+                    reached(graph, TraversalOrder.DEPTH_FIRST, depth));
+        assertTrue(reached(graph, TraversalOrder.DEPTH_FIRST, 2).contains(3));
+    }
+
+    @Test
+    public void untypedVerticesAreFoundByTheNullType() {
+        StructuredGraph graph = new StructuredGraph();
+        Vertex v = graph.addVertex(data(0), null);
+        assertNotNull(v);
+        assertNull(v.getTag());
+        assertSame(v, graph.findVertex(data(0), null));
+        assertNull(graph.findVertex(data(0), "V"));
+        graph.addEdge(data(0), null, data(1), "V", "r", false, 1.0);
+        assertEquals(1, graph.findNeighbors(data(0), null).size());
+        assertTrue(graph.deleteVertex(data(0), null));
+        assertEquals(1, graph.getNumVertices());
+    }
+
+    @Test
+    public void deleteEdgeOfADeletedVertexReturnsFalse() {
+        StructuredGraph graph = new StructuredGraph();
+        graph.addEdge(data(0), "V", data(1), "V", "r", true, 1.0);
+        assertTrue(graph.deleteVertex(data(1), "V"));
+        assertFalse(graph.deleteEdge(data(0), "V", data(1), "V"));
+        assertEquals(0, graph.getNumEdges());
+    }
+
+    @Test
+    public void concurrentDeletesKeepTheEdgeCount() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            StructuredGraph graph = new StructuredGraph(true);
+            int n = 200;
+            for (int i = 0; i < n; i++)
+                graph.addEdge(data(i), "V", data((i + 1) % n), "V", "r", true, 1.0);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread vertices = new Thread(() -> {
+                try {
+                    for (int i = 0; i < n; i += 2)
+                        graph.deleteVertex(data(i), "V");
+                } catch (Throwable ex) {
+                    failure.set(ex);
+                }
+            });
+            Thread edges = new Thread(() -> {
+                try {
+                    for (int i = 0; i < n; i++)
+                        graph.deleteEdge(data(i), "V", data((i + 1) % n), "V");
+                } catch (Throwable ex) {
+                    failure.set(ex);
+                }
+            });
+            vertices.start();
+            edges.start();
+            vertices.join();
+            edges.join();
+            assertNull(String.valueOf(failure.get()), failure.get());
+            assertEquals(n / 2, graph.getNumVertices());
+            assertEquals(0, graph.getNumEdges());
+        }
+    }
+}
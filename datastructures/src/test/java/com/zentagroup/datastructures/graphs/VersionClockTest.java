@@ -0,0 +1,57 @@
+package com.zentagroup.datastructures.graphs;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class VersionClockTest {
+
+    @Test
+    public void stableStopsBeforeTheOldestWriteInFlight() {
+        VersionClock clock = new VersionClock();
+        assertEquals(0, clock.stable());
+        long first = clock.begin();
+        long second = clock.begin();
+        assertEquals(first - 1, clock.stable());
+        clock.end(second);
+        assertEquals(first - 1, clock.stable());
+        clock.end(first);
+        assertEquals(second, clock.stable());
+    }
+
+    @Test
+    public void stableNeverFailsNorGoesBackWhileWritesEnd() throws InterruptedException {
+        VersionClock clock = new VersionClock();
+        int writers = 4;
+        CountDownLatch done = new CountDownLatch(writers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int w = 0; w < writers; w++) {
+            new Thread(() -> {
+                for (int i = 0; i < 100000; i++)
+                    clock.end(clock.begin());
+                done.countDown();
+            }).start();
+        }
+        Thread reader = new Thread(() -> {
+            long last = 0;
+            try {
+                while (done.getCount() > 0) {
+                    long stable = clock.stable();
+                    if (stable < last)
+                        throw new AssertionError("Stable version went back from " + last + " to " + stable);
+                    last = stable;
+                }
+            } catch (Throwable ex) {
+                failure.set(ex);
+            }
+        });
+        reader.start();
+        done.await();
+        reader.join();
+        assertNull(String.valueOf(failure.get()), failure.get());
+        assertEquals(writers * 100000L, clock.stable());
+    }
+}
@@ -0,0 +1,110 @@
+package com.zentagroup.datastructures.graphs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static HashMap<String, Object> data(int id) {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        return data;
+    }
+
+    private StructuredGraph logged(Path file, WriteAheadLog.SyncPolicy policy) throws IOException {
+        StructuredGraph graph = new StructuredGraph(true);
+        try (WriteAheadLog log = WriteAheadLog.open(file, policy)) {
+            log.attach(graph);
+            for (int i = 0; i < 50; i++)
+                graph.addVertex(data(i), "A");
+            graph.addVertex(data(0), null);
+            for (int i = 0; i < 49; i++)
+                graph.addEdge(data(i), "A", data(i + 1), "A", "next", i % 2 == 0, 1.0 + i);
+            graph.deleteVertex(data(25), "A");
+            graph.deleteEdge(data(10), "A", data(11), "A");
+        }
+        return graph;
+    }
+
+    private StructuredGraph replay(Path file) throws IOException {
+        StructuredGraph graph = new StructuredGraph();
+        try (WriteAheadLog log = WriteAheadLog.open(file, WriteAheadLog.SyncPolicy.NONE)) {
+            log.attach(graph);
+            log.detach(graph);
+        }
+        return graph;
+    }
+
+    @Test
+    public void replayRebuildsTheGraph() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.wal");
+        StructuredGraph graph = logged(file, WriteAheadLog.SyncPolicy.ALWAYS);
+        StructuredGraph replayed = replay(file);
+        assertEquals(graph.getNumVertices(), replayed.getNumVertices());
+        assertEquals(graph.getNumEdges(), replayed.getNumEdges());
+        assertNull(replayed.findVertex(data(25), "A"));
+        assertNotNull(replayed.findVertex(data(0), null));
+        assertTrue(replayed.findEdge(data(10), "A", data(11), "A", "next").isEmpty());
+    }
+
+    @Test
+    public void tornRecordAtTheEndIsCutOff() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.wal");
+        StructuredGraph graph = logged(file, WriteAheadLog.SyncPolicy.NONE);
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 50, 1, 2}), size);
+        }
+        StructuredGraph replayed = replay(file);
+        assertEquals(size, Files.size(file));
+        assertEquals(graph.getNumVertices(), replayed.getNumVertices());
+        assertEquals(graph.getNumEdges(), replayed.getNumEdges());
+    }
+
+    @Test
+    public void truncatedLastRecordIsDropped() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.wal");
+        StructuredGraph graph = logged(file, WriteAheadLog.SyncPolicy.NONE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        StructuredGraph replayed = replay(file);
+        assertEquals(graph.getNumVertices(), replayed.getNumVertices());
+        assertEquals(1, replayed.findEdge(data(10), "A", data(11), "A", "next").size());
+        assertTrue(replayed.deleteEdge(data(10), "A", data(11), "A"));
+        assertEquals(graph.getNumEdges(), replayed.getNumEdges());
+    }
+
+    @Test
+    public void checkpointEmptiesTheLog() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.wal");
+        Path snapshot = folder.getRoot().toPath().resolve("graph.snap");
+        StructuredGraph graph = logged(file, WriteAheadLog.SyncPolicy.NONE);
+        StructuredGraph replayed = new StructuredGraph();
+        try (WriteAheadLog log = WriteAheadLog.open(file, WriteAheadLog.SyncPolicy.NONE)) {
+            log.attach(replayed);
+            replayed.checkpoint(snapshot);
+            replayed.addVertex(data(100), "B");
+        }
+        StructuredGraph loaded = StructuredGraph.load(snapshot);
+        try (WriteAheadLog log = WriteAheadLog.open(file, WriteAheadLog.SyncPolicy.NONE)) {
+            assertEquals(1, log.attach(loaded));
+        }
+        assertEquals(graph.getNumVertices() + 1, loaded.getNumVertices());
+        assertEquals(graph.getNumEdges(), loaded.getNumEdges());
+    }
+}